@@ -3,6 +3,8 @@ package dhbw.timetable;
 import android.app.Application;
 import android.util.Log;
 
+import dhbw.timetable.data.ConnectivityMonitor;
+
 /**
  * Created by Hendrik Ulbrich (c) 2017
  */
@@ -11,6 +13,8 @@ public class App extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        // Start listening early, so the connectivity is known before the first sync
+        ConnectivityMonitor.getInstance(this);
         Log.i("APP", "Application terminated.");
     }
 
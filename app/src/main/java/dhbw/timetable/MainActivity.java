@@ -1,12 +1,10 @@
 package dhbw.timetable;
 
-import android.app.ActivityManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.Configuration;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
 import android.support.design.widget.NavigationView;
 import android.support.v4.app.Fragment;
@@ -18,15 +16,13 @@ import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.util.Log;
 import android.view.MenuItem;
-import android.widget.Toast;
 
-import dhbw.timetable.data.TimetableManager;
 import dhbw.timetable.navfragments.notifications.NotificationsFragment;
 import dhbw.timetable.navfragments.notifications.alarm.AlarmSupervisor;
 import dhbw.timetable.navfragments.preferences.PreferencesActivity;
 import dhbw.timetable.navfragments.today.TodayFragment;
 import dhbw.timetable.navfragments.week.WeekFragment;
-import dhbw.timetable.services.TimetableSyncService;
+import dhbw.timetable.services.SyncScheduler;
 
 /**
  * Created by Hendrik Ulbrich (C) 2017
@@ -34,8 +30,6 @@ import dhbw.timetable.services.TimetableSyncService;
 public class MainActivity extends AppCompatActivity implements NavigationView.OnNavigationItemSelectedListener {
 
     private Fragment currFragment;
-    private Intent mServiceIntent;
-    private TimetableSyncService mService;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -52,7 +46,7 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
             overridePendingTransition(0, 0);
         }
 
-        startSyncService();
+        SyncScheduler.schedule(this);
 
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -72,7 +66,6 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
 
     @Override
     protected void onDestroy() {
-        stopService(mServiceIntent);
         Log.i("MAIN", "onDestroy!");
         super.onDestroy();
     }
@@ -95,8 +88,7 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
         } else if (requestCode == 2) {
             Log.i("ACT-RES", "Settings activity has a result");
             Log.i("SYNC", "Reconfiguring background sync...");
-            stopSyncService();
-            startSyncService();
+            SyncScheduler.schedule(this);
         } else {
             Log.w("ACT-RES", "Received unknown activity result{" + resultCode + "} from " + requestCode);
         }
@@ -135,67 +127,34 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
     public boolean displayFragment(int id) {
         DrawerLayout drawer = (DrawerLayout) findViewById(R.id.drawer_layout);
         boolean changeNeeded = true;
-        if (!TimetableManager.getInstance().isRunning()) {
-            switch (id) {
-                case R.id.nav_week:
-                    currFragment = new WeekFragment();
-                    break;
-                case R.id.nav_today:
-                    currFragment = new TodayFragment();
-                    break;
-                case R.id.nav_notifications:
-                    if (currFragment instanceof NotificationsFragment) {
-                        drawer.closeDrawer(GravityCompat.START);
-                        return false;
-                    }
-                    currFragment = new NotificationsFragment();
-                    break;
-                case R.id.nav_settings:
-                    Intent i = new Intent(this, PreferencesActivity.class);
-                    startActivityForResult(i, 2);
-                    overridePendingTransition(0, 0);
-                    changeNeeded = false;
-            }
+        switch (id) {
+            case R.id.nav_week:
+                currFragment = new WeekFragment();
+                break;
+            case R.id.nav_today:
+                currFragment = new TodayFragment();
+                break;
+            case R.id.nav_notifications:
+                if (currFragment instanceof NotificationsFragment) {
+                    drawer.closeDrawer(GravityCompat.START);
+                    return false;
+                }
+                currFragment = new NotificationsFragment();
+                break;
+            case R.id.nav_settings:
+                Intent i = new Intent(this, PreferencesActivity.class);
+                startActivityForResult(i, 2);
+                overridePendingTransition(0, 0);
+                changeNeeded = false;
+        }
 
-            if (currFragment != null) {
-                FragmentTransaction ft = getSupportFragmentManager().beginTransaction();
-                ft.replace(R.id.content_main, currFragment);
-                ft.commit();
-            }
-        } else {
-            changeNeeded = false;
-            Toast.makeText(this, "I'm currently busy, sorry!", Toast.LENGTH_SHORT).show();
+        if (currFragment != null) {
+            FragmentTransaction ft = getSupportFragmentManager().beginTransaction();
+            ft.replace(R.id.content_main, currFragment);
+            ft.commit();
         }
 
         drawer.closeDrawer(GravityCompat.START);
         return changeNeeded;
     }
-
-    private void startSyncService() {
-        mService = new TimetableSyncService(this);
-        mServiceIntent = new Intent(this, mService.getClass());
-        String syncFreq = PreferenceManager.
-                getDefaultSharedPreferences(this).getString("sync_frequency_list", "-1");
-        if (!syncFreq.equals("-1")) {
-            int msFreq = (int) (Double.parseDouble(syncFreq) * 360000);
-            mServiceIntent.putExtra("freq", msFreq);
-            if (!isMyServiceRunning(mService.getClass())) {
-                startService(mServiceIntent);
-            }
-        }
-    }
-
-    private void stopSyncService() {
-        stopService(mServiceIntent);
-    }
-
-    private boolean isMyServiceRunning(Class<?> serviceClass) {
-        ActivityManager manager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
-        if (manager != null) {
-            for (ActivityManager.RunningServiceInfo service : manager.getRunningServices(Integer.MAX_VALUE)) {
-                if (serviceClass.getName().equals(service.service.getClassName())) return true;
-            }
-        }
-        return false;
-    }
 }
@@ -9,6 +9,8 @@ public class AgendaAppointment extends Lecture {
 
     private String startTime, endTime;
     private boolean isBreak;
+    // Content hash, the fields never change
+    private final long hash;
 
     public AgendaAppointment(String startTime, String endTime, String title, String persons, String resources, boolean isBreak) {
         super(title, persons, resources);
@@ -16,6 +18,12 @@ public class AgendaAppointment extends Lecture {
         this.startTime = startTime;
         this.endTime = endTime;
         this.isBreak = isBreak;
+
+        long h = ContentHash.mix(ContentHash.OFFSET, startTime);
+        h = ContentHash.mix(h, title);
+        h = ContentHash.mix(h, persons);
+        h = ContentHash.mix(h, resources);
+        this.hash = ContentHash.mix(h, endTime);
     }
 
     public String getStartTime() {
@@ -34,7 +42,13 @@ public class AgendaAppointment extends Lecture {
     public boolean equals(Object obj) {
         if (obj != null) {
             if (obj instanceof AgendaAppointment) {
-                return this.toString().equals(obj.toString());
+                AgendaAppointment other = (AgendaAppointment) obj;
+                return hash == other.hash
+                        && ContentHash.equal(startTime, other.startTime)
+                        && ContentHash.equal(title, other.title)
+                        && ContentHash.equal(persons, other.persons)
+                        && ContentHash.equal(resources, other.resources)
+                        && ContentHash.equal(endTime, other.endTime);
             }
         }
         return false;
@@ -42,7 +56,7 @@ public class AgendaAppointment extends Lecture {
 
     @Override
     public int hashCode() {
-        return this.toString().hashCode();
+        return (int) (hash ^ (hash >>> 32));
     }
 
     @Override
@@ -0,0 +1,237 @@
+package dhbw.timetable.data;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+
+/**
+ * Appointments sorted by start, with the offset of the first appointment of every day
+ * that has any. Day, week and range queries are a binary search over the days and
+ * return views of the sorted array, so they never copy or scan the other weeks.
+ * <p>
+ * The appointments are the ones of the weeks, the index only adds their start instants
+ * and their start and end minute of the day packed into one int, for drawing code that
+ * only needs those.
+ */
+public final class AppointmentIndex {
+
+    public static final AppointmentIndex EMPTY = new AppointmentIndex(new BackportAppointment[0], new long[0],
+            new int[0], new int[0], new int[]{0});
+
+    private final BackportAppointment[] appointments;
+    // Start instants of the appointments, ascending
+    private final long[] startMillis;
+    // Start minute of the day in the high, end minute in the low 16 bits
+    private final int[] minutes;
+    // Epoch days having appointments, ascending
+    private final int[] days;
+    // Appointments of days[i] are at offsets[i] until offsets[i + 1]
+    private final int[] offsets;
+
+    private AppointmentIndex(BackportAppointment[] appointments, long[] startMillis, int[] minutes,
+                             int[] days, int[] offsets) {
+        this.appointments = appointments;
+        this.startMillis = startMillis;
+        this.minutes = minutes;
+        this.days = days;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Indexes all appointments of the given weeks
+     */
+    public static AppointmentIndex of(Collection<? extends List<BackportAppointment>> weeks) {
+        int size = 0;
+        for (List<BackportAppointment> week : weeks) size += week.size();
+        if (size == 0) return EMPTY;
+
+        final BackportAppointment[] sorted = new BackportAppointment[size];
+        final long[] starts = new long[size];
+        long first = Long.MAX_VALUE;
+        int i = 0;
+        for (List<BackportAppointment> week : weeks) {
+            for (BackportAppointment a : week) {
+                sorted[i] = a;
+                starts[i] = a.getStartDate().getTimeInMillis();
+                first = Math.min(first, starts[i]);
+                i++;
+            }
+        }
+        // Start relative to the first one above the position. Sorting the keys is stable,
+        // appointments starting at the same time keep their order within the week.
+        final int positionBits = 32 - Integer.numberOfLeadingZeros(size);
+        final long[] keys = new long[size];
+        for (i = 0; i < size; i++) {
+            keys[i] = (starts[i] - first) << positionBits | i;
+        }
+        Arrays.sort(keys);
+
+        final BackportAppointment[] appointments = new BackportAppointment[size];
+        final long[] startMillis = new long[size];
+        final long positionMask = (1L << positionBits) - 1;
+        for (i = 0; i < size; i++) {
+            final int position = (int) (keys[i] & positionMask);
+            appointments[i] = sorted[position];
+            startMillis[i] = starts[position];
+        }
+        final int[] minutes = new int[size];
+        int[] days = new int[size];
+        int[] offsets = new int[size + 1];
+        int dayCount = 0;
+        for (i = 0; i < size; i++) {
+            final BackportAppointment a = appointments[i];
+            minutes[i] = EpochDays.minuteOfDay(a.getStartDate()) << 16 | EpochDays.minuteOfDay(a.getEndDate());
+            final int day = EpochDays.of(a.getStartDate());
+            if (dayCount == 0 || days[dayCount - 1] != day) {
+                days[dayCount] = day;
+                offsets[dayCount] = i;
+                dayCount++;
+            }
+        }
+        offsets[dayCount] = size;
+        return new AppointmentIndex(appointments, startMillis, minutes,
+                Arrays.copyOf(days, dayCount), Arrays.copyOf(offsets, dayCount + 1));
+    }
+
+    public int size() {
+        return appointments.length;
+    }
+
+    /**
+     * @return the i-th appointment in order of start
+     */
+    public BackportAppointment get(int i) {
+        return appointments[i];
+    }
+
+    /**
+     * @return the first appointment starting at or after the given instant, null if there is none
+     */
+    public BackportAppointment nextAppointmentAfter(long instantMillis) {
+        final int i = positionAfter(instantMillis);
+        return i < appointments.length ? appointments[i] : null;
+    }
+
+    /**
+     * @return position of the first appointment starting at or after the given instant,
+     * size() if there is none
+     */
+    public int positionAfter(long instantMillis) {
+        int low = 0, high = startMillis.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (startMillis[mid] < instantMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the earliest appointment of the given epoch day, null if the day has none
+     */
+    public BackportAppointment firstOfDay(int epochDay) {
+        final int i = lowerBound(epochDay);
+        return i < days.length && days[i] == epochDay ? appointments[offsets[i]] : null;
+    }
+
+    /**
+     * @return start minute of the day of the i-th appointment
+     */
+    public int getStartMinute(int i) {
+        return minutes[i] >>> 16;
+    }
+
+    /**
+     * @return end minute of the day of the i-th appointment
+     */
+    public int getEndMinute(int i) {
+        return minutes[i] & 0xFFFF;
+    }
+
+    /**
+     * @return epoch day of the i-th appointment
+     */
+    public int getDay(int i) {
+        // Last day starting at or before i
+        int low = 0, high = days.length - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= i) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return days[low];
+    }
+
+    /**
+     * @return position of the first appointment on or after the given epoch day,
+     * the appointments of a day are at offsetOf(day) until offsetOf(day + 1)
+     */
+    public int offsetOf(int epochDay) {
+        return offsets[lowerBound(epochDay)];
+    }
+
+    /**
+     * @return appointments of the given epoch day, sorted by start
+     */
+    public List<BackportAppointment> day(int epochDay) {
+        return range(epochDay, epochDay + 1);
+    }
+
+    /**
+     * @return minute intervals of the appointments of the given epoch day, positions are
+     * the ones of {@link #day}
+     */
+    public DayIntervals intervals(int epochDay) {
+        final int first = offsetOf(epochDay);
+        final int size = offsetOf(epochDay + 1) - first;
+        int[] starts = new int[size], ends = new int[size];
+        for (int i = 0; i < size; i++) {
+            starts[i] = getStartMinute(first + i);
+            ends[i] = getEndMinute(first + i);
+        }
+        return DayIntervals.of(starts, ends);
+    }
+
+    /**
+     * @return appointments of the seven days from the given monday on, sorted by start
+     */
+    public List<BackportAppointment> week(int monday) {
+        return range(monday, monday + 7);
+    }
+
+    /**
+     * @return appointments from epoch day from (inclusive) to epoch day to (exclusive), sorted by start
+     */
+    public List<BackportAppointment> range(int from, int to) {
+        if (from >= to) return Collections.emptyList();
+        final int first = offsetOf(from);
+        final int last = offsetOf(to);
+        if (first == last) return Collections.emptyList();
+        return Collections.unmodifiableList(Arrays.asList(appointments).subList(first, last));
+    }
+
+    /**
+     * @return index of the first day not before the given one, days.length if there is none
+     */
+    private int lowerBound(int day) {
+        int low = 0, high = days.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (days[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
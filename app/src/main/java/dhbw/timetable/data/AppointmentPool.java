@@ -0,0 +1,201 @@
+package dhbw.timetable.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+
+/**
+ * Canonical instances of the appointments and strings of the globals. Downloaded and
+ * offline weeks go through {@link #canonicalize} before they are published, so a lecture
+ * title or room appearing in dozens of appointments is held once, and an appointment that
+ * did not change between two syncs stays the same instance instead of being held twice.
+ * <p>
+ * Every appointment counts the published weeks using it, every string the appointments
+ * using it. {@link #retain} updates the counts by the weeks that changed between two
+ * states and drops what is not used anymore, so its cost follows the size of the change.
+ */
+final class AppointmentPool {
+
+    private static final int MIN_CAPACITY = 64;
+
+    private static final class SharedString {
+        final String value;
+        int refs;
+
+        SharedString(String value) {
+            this.value = value;
+        }
+    }
+
+    private final Map<String, SharedString> strings = new HashMap<>();
+    // Open addressing by content, so the pool costs one reference and count per appointment
+    private BackportAppointment[] table = new BackportAppointment[MIN_CAPACITY];
+    private int[] refs = new int[MIN_CAPACITY];
+    private int size = 0;
+    // Added by canonicalize since the last retain, dropped there if no week uses them
+    private final ArrayList<BackportAppointment> fresh = new ArrayList<>();
+
+    /**
+     * Replaces every appointment of the given weeks by its canonical instance. An
+     * appointment seen for the first time becomes canonical itself, it is only rebuilt if
+     * one of its strings is held by the pool as another instance.
+     *
+     * @return number of appointments that were already in the pool
+     */
+    synchronized int canonicalize(Map<TimelessDate, ArrayList<BackportAppointment>> weeks) {
+        int reused = 0;
+        for (ArrayList<BackportAppointment> week : weeks.values()) {
+            for (int i = 0; i < week.size(); i++) {
+                final BackportAppointment a = week.get(i);
+                final int slot = slot(a);
+                BackportAppointment canonical = table[slot];
+                if (canonical != null) {
+                    reused++;
+                } else {
+                    final String title = intern(a.getTitle());
+                    final String persons = intern(a.getPersons());
+                    final String resources = intern(a.getResources());
+                    canonical = title == a.getTitle() && persons == a.getPersons() && resources == a.getResources()
+                            ? a
+                            : new BackportAppointment(SnapshotFormat.timeRange(EpochDays.minuteOfDay(a.getStartDate()),
+                            EpochDays.minuteOfDay(a.getEndDate())), new TimelessDate(a.getStartDate()),
+                            title, persons, resources);
+                    add(canonical, slot, 0);
+                    fresh.add(canonical);
+                }
+                week.set(i, canonical);
+            }
+        }
+        return reused;
+    }
+
+    /**
+     * Counts the weeks published by the change from before to after and drops the
+     * appointments and strings no week uses anymore. Weeks are compared by identity, so
+     * a merge that changed nothing costs one look at every week.
+     */
+    synchronized void retain(TimetableState before, TimetableState after) {
+        if (before != after) {
+            // Acquire first, so appointments kept by a replaced week are never dropped
+            for (int monday : after.getMondays()) {
+                final ArrayList<BackportAppointment> week = after.getWeek(monday);
+                if (before.getWeek(monday) != week) count(week, 1);
+            }
+            for (int monday : before.getMondays()) {
+                final ArrayList<BackportAppointment> week = before.getWeek(monday);
+                if (after.getWeek(monday) != week) count(week, -1);
+            }
+        }
+        // Canonicalized but never published, like weeks outside of the sync range
+        for (BackportAppointment a : fresh) {
+            final int slot = slot(a);
+            if (table[slot] == a && refs[slot] == 0) removeAt(slot);
+        }
+        fresh.clear();
+        if (table.length > MIN_CAPACITY && size * 8 < table.length) {
+            rehash(table.length >> 1);
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Adds delta to the counts of the appointments of a week. Counts of states retained out
+     * of order may go below zero for a while, the entry stays until it is back at zero.
+     */
+    private void count(ArrayList<BackportAppointment> week, int delta) {
+        for (BackportAppointment a : week) {
+            final int slot = slot(a);
+            if (table[slot] == null) {
+                add(a, slot, delta);
+            } else if ((refs[slot] += delta) == 0) {
+                removeAt(slot);
+            }
+        }
+    }
+
+    private void add(BackportAppointment a, int slot, int count) {
+        table[slot] = a;
+        refs[slot] = count;
+        countString(a.getTitle(), 1);
+        countString(a.getPersons(), 1);
+        countString(a.getResources(), 1);
+        if (++size * 2 > table.length) {
+            rehash(table.length << 1);
+        }
+    }
+
+    /**
+     * Empties the slot and moves the following appointments of its probe run into place
+     */
+    private void removeAt(int slot) {
+        final BackportAppointment removed = table[slot];
+        countString(removed.getTitle(), -1);
+        countString(removed.getPersons(), -1);
+        countString(removed.getResources(), -1);
+        table[slot] = null;
+        refs[slot] = 0;
+        size--;
+        final int mask = table.length - 1;
+        for (int next = (slot + 1) & mask; table[next] != null; next = (next + 1) & mask) {
+            final BackportAppointment b = table[next];
+            final int count = refs[next];
+            table[next] = null;
+            final int target = slot(b);
+            table[target] = b;
+            refs[target] = count;
+        }
+    }
+
+    private void rehash(int capacity) {
+        final BackportAppointment[] oldTable = table;
+        final int[] oldRefs = refs;
+        table = new BackportAppointment[capacity];
+        refs = new int[capacity];
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldTable[i] != null) {
+                final int slot = slot(oldTable[i]);
+                table[slot] = oldTable[i];
+                refs[slot] = oldRefs[i];
+            }
+        }
+    }
+
+    /**
+     * @return slot of the appointment with the same content, or the empty slot to put it
+     */
+    private int slot(BackportAppointment a) {
+        final long h = ContentHash.of(a);
+        final int mask = table.length - 1;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        BackportAppointment b;
+        while ((b = table[slot]) != null) {
+            if (ContentHash.equal(a, b)) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private String intern(String s) {
+        if (s == null) return null;
+        final SharedString shared = strings.get(s);
+        return shared != null ? shared.value : s;
+    }
+
+    private void countString(String s, int delta) {
+        if (s == null) return;
+        SharedString shared = strings.get(s);
+        if (shared == null) {
+            shared = new SharedString(s);
+            strings.put(s, shared);
+        }
+        if ((shared.refs += delta) == 0) {
+            strings.remove(s);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package dhbw.timetable.data;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+
+/**
+ * Append-only log of appointment changes on top of the week files of {@link OfflineStore}.
+ * Every save of a known week appends one frame:
+ * <pre>
+ * int  length of the rest of the frame
+ * int  epoch day of the monday
+ * int  number of changes
+ * for each change:
+ *   byte  INSERT_AT, REMOVE or INSERT
+ *   int   position in the new version of the week (INSERT_AT only)
+ *   ...   appointment as in {@link SnapshotFormat}
+ * long CRC32 of the frame from the monday on
+ * </pre>
+ * A modified appointment is a REMOVE of the old and an INSERT_AT of the new version.
+ * Replaying a frame restores the week in the order it was saved in, which the change
+ * detection relies on. INSERT, placed by start, is only read from older journals.
+ * A frame cut off by a crash or failing its checksum is dropped with everything after
+ * it when the journal is loaded. The week files stay valid without their changes, the
+ * next save journals the difference again.
+ * <p>
+ * Frames are appended by one writer at a time. They become visible to {@link #apply} once
+ * they are on disk.
+ */
+final class ChangeJournal {
+
+    private static final byte INSERT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte INSERT_AT = 3;
+
+    private static final class Change {
+        final byte op;
+        final int position;
+        final BackportAppointment appointment;
+        final long hash;
+
+        Change(byte op, int position, BackportAppointment appointment) {
+            this.op = op;
+            this.position = position;
+            this.appointment = appointment;
+            this.hash = ContentHash.of(appointment);
+        }
+    }
+
+    private final File file;
+    private final Map<Integer, ArrayList<Change>> changes = new HashMap<>();
+    private long length = 0;
+
+    ChangeJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads all complete frames into memory and cuts off a torn last frame
+     */
+    synchronized void load() throws IOException {
+        changes.clear();
+        length = 0;
+        if (!file.exists()) return;
+        final long fileLength = file.length();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (length + 4 <= fileLength) {
+                final int frameLength = in.readInt();
+                if (frameLength < 16 || length + 4 + frameLength > fileLength) break;
+                byte[] frame = new byte[frameLength];
+                in.readFully(frame);
+                CRC32 crc = new CRC32();
+                crc.update(frame, 0, frameLength - 8);
+                DataInputStream frameIn = new DataInputStream(new ByteArrayInputStream(frame));
+                frameIn.skipBytes(frameLength - 8);
+                if (frameIn.readLong() != crc.getValue()) {
+                    throw new IOException("Checksum mismatch at " + length);
+                }
+                readFrame(new DataInputStream(new ByteArrayInputStream(frame, 0, frameLength - 8)));
+                length += 4 + frameLength;
+            }
+        } catch (IOException e) {
+            // Everything from the broken frame on is dropped below
+            Log.w("STORE", "Journal frame unreadable: " + e);
+        } finally {
+            in.close();
+        }
+        if (length < fileLength) {
+            Log.w("STORE", "Dropping " + (fileLength - length) + " bytes of a torn journal frame");
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+        }
+        Log.i("STORE", "Loaded journal of " + length + " bytes for " + changes.size() + " weeks");
+    }
+
+    private void readFrame(DataInputStream in) throws IOException {
+        final int monday = in.readInt();
+        ArrayList<Change> frame = new ArrayList<>();
+        for (int count = in.readInt(); count > 0; count--) {
+            final byte op = in.readByte();
+            if (op != INSERT && op != REMOVE && op != INSERT_AT) {
+                throw new IOException("Unknown journal operation " + op);
+            }
+            final int position = op == INSERT_AT ? in.readInt() : -1;
+            frame.add(new Change(op, position, SnapshotFormat.readAppointment(in)));
+        }
+        weekChanges(monday).addAll(frame);
+    }
+
+    synchronized long length() {
+        return length;
+    }
+
+    synchronized boolean hasChanges(int monday) {
+        return changes.containsKey(monday);
+    }
+
+    synchronized Set<Integer> weeks() {
+        return Collections.unmodifiableSet(new HashSet<>(changes.keySet()));
+    }
+
+    /**
+     * @return weeks with changes of older journals, which replay in start order and may
+     * differ from the order the week was saved in
+     */
+    synchronized Set<Integer> unorderedWeeks() {
+        Set<Integer> weeks = new HashSet<>();
+        for (Map.Entry<Integer, ArrayList<Change>> week : changes.entrySet()) {
+            for (Change c : week.getValue()) {
+                if (c.op == INSERT) {
+                    weeks.add(week.getKey());
+                    break;
+                }
+            }
+        }
+        return weeks;
+    }
+
+    /**
+     * Appends the difference between the old and the new appointments of a week
+     *
+     * @return number of bytes appended, 0 if both contain the same appointments, -1 if
+     * replaying the difference on old would not give now in its order. Nothing is
+     * appended then and the week has to be written completely.
+     */
+    int append(int monday, List<BackportAppointment> old, List<BackportAppointment> now) throws IOException {
+        // Appointments are compared by content, the same way the change notification does.
+        // Old ones in open addressing by content hash, equal ones take a slot each.
+        final long[] hashes = new long[old.size()];
+        final int[] table = new int[Integer.highestOneBit(Math.max(1, old.size()) * 4)];
+        final int mask = table.length - 1;
+        for (int i = 0; i < old.size(); i++) {
+            hashes[i] = ContentHash.of(old.get(i));
+            int slot = slotOf(hashes[i], mask);
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = i + 1;
+        }
+        final boolean[] kept = new boolean[old.size()];
+        ArrayList<Change> inserts = new ArrayList<>();
+        for (int i = 0; i < now.size(); i++) {
+            final BackportAppointment a = now.get(i);
+            final long hash = ContentHash.of(a);
+            int slot = slotOf(hash, mask), match = -1;
+            for (int j; (j = table[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+                if (!kept[j] && hashes[j] == hash && ContentHash.equal(old.get(j), a)) {
+                    match = j;
+                    break;
+                }
+            }
+            if (match >= 0) {
+                kept[match] = true;
+            } else {
+                inserts.add(new Change(INSERT_AT, i, a));
+            }
+        }
+        // Removes first, so that apply never drops an appointment just inserted
+        ArrayList<Change> diff = new ArrayList<>();
+        for (int i = 0; i < old.size(); i++) {
+            if (!kept[i]) diff.add(new Change(REMOVE, -1, old.get(i)));
+        }
+        diff.addAll(inserts);
+        // Kept appointments the server reordered can not be expressed by the changes
+        ArrayList<BackportAppointment> replayed = new ArrayList<>(old);
+        replay(diff, replayed);
+        if (!sameOrder(replayed, now)) return -1;
+        if (diff.isEmpty()) return 0;
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(0); // Frame length, patched below
+        out.writeInt(monday);
+        out.writeInt(diff.size());
+        for (Change c : diff) {
+            out.writeByte(c.op);
+            if (c.op == INSERT_AT) out.writeInt(c.position);
+            SnapshotFormat.writeAppointment(c.appointment, out);
+        }
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.toByteArray(), 4, buffer.size() - 4);
+        out.writeLong(crc.getValue());
+        out.flush();
+        byte[] frame = buffer.toByteArray();
+        final int frameLength = frame.length - 4;
+        frame[0] = (byte) (frameLength >>> 24);
+        frame[1] = (byte) (frameLength >>> 16);
+        frame[2] = (byte) (frameLength >>> 8);
+        frame[3] = (byte) frameLength;
+
+        FileOutputStream fos = new FileOutputStream(file, true);
+        try {
+            fos.write(frame);
+            fos.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        synchronized (this) {
+            length += frame.length;
+            weekChanges(monday).addAll(diff);
+        }
+        return frame.length;
+    }
+
+    /**
+     * Replays the journaled changes of a week on its base appointments
+     */
+    synchronized void apply(int monday, List<BackportAppointment> week) {
+        ArrayList<Change> log = changes.get(monday);
+        if (log != null) replay(log, week);
+    }
+
+    private static void replay(List<Change> log, List<BackportAppointment> week) {
+        // Content hashes of the week, kept in step with it
+        final long[] hashes = new long[week.size() + log.size()];
+        int size = week.size();
+        for (int i = 0; i < size; i++) hashes[i] = ContentHash.of(week.get(i));
+        for (Change c : log) {
+            if (c.op == REMOVE) {
+                for (int i = 0; i < size; i++) {
+                    if (hashes[i] == c.hash && ContentHash.equal(week.get(i), c.appointment)) {
+                        week.remove(i);
+                        System.arraycopy(hashes, i + 1, hashes, i, --size - i);
+                        break;
+                    }
+                }
+                continue;
+            }
+            int i;
+            if (c.op == INSERT_AT) {
+                // Inserts of a frame come in ascending position after its removes
+                i = Math.min(c.position, size);
+            } else {
+                final long start = c.appointment.getStartDate().getTimeInMillis();
+                i = size;
+                while (i > 0 && week.get(i - 1).getStartDate().getTimeInMillis() > start) i--;
+            }
+            week.add(i, c.appointment);
+            System.arraycopy(hashes, i, hashes, i + 1, size++ - i);
+            hashes[i] = c.hash;
+        }
+    }
+
+    private static int slotOf(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static boolean sameOrder(List<BackportAppointment> a, List<BackportAppointment> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (!ContentHash.equal(a.get(i), b.get(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Empties the journal, once its changes were written into the week files
+     */
+    synchronized void reset() throws IOException {
+        changes.clear();
+        length = 0;
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+    }
+
+    private ArrayList<Change> weekChanges(int monday) {
+        ArrayList<Change> week = changes.get(monday);
+        if (week == null) {
+            week = new ArrayList<>();
+            changes.put(monday, week);
+        }
+        return week;
+    }
+}
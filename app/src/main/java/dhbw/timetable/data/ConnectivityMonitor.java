@@ -0,0 +1,124 @@
+package dhbw.timetable.data;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of whether a network is available through the callbacks of the system,
+ * so {@link #isOnline} is answered from memory instead of probing a server. Work that
+ * needs a network can be queued with {@link #runWhenOnline} and is run on the main
+ * thread as soon as one becomes available.
+ * <p>
+ * Uses network callbacks from Lollipop on and the connectivity broadcast before.
+ */
+public final class ConnectivityMonitor {
+
+    private static ConnectivityMonitor INSTANCE;
+
+    private final ConnectivityManager manager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean online;
+    // Guarded by this, by key so that a task queued again is only run once
+    private final Map<String, Runnable> queued = new LinkedHashMap<>();
+
+    private ConnectivityMonitor(Context context) {
+        manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        online = queryOnline();
+        if (manager == null) {
+            Log.w("NET", "Can't access system service ConnectivityManager");
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            NetworkRequest request = new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build();
+            manager.registerNetworkCallback(request, new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    setOnline(true);
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    // Another network may still be there
+                    setOnline(queryOnline());
+                }
+            });
+        } else {
+            context.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context c, Intent intent) {
+                    setOnline(queryOnline());
+                }
+            }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+        Log.i("NET", "Monitoring connectivity, online=" + online);
+    }
+
+    public static synchronized ConnectivityMonitor getInstance(Context context) {
+        if (INSTANCE == null) {
+            INSTANCE = new ConnectivityMonitor(context.getApplicationContext());
+        }
+        return INSTANCE;
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    /**
+     * Runs the task on the main thread once a network is available. A task queued under a
+     * key that is still waiting replaces the previous one.
+     */
+    public void runWhenOnline(String key, Runnable task) {
+        synchronized (this) {
+            queued.remove(key);
+            queued.put(key, task);
+            Log.i("NET", "Queued " + key + " until a network is available");
+        }
+        // Might have come back meanwhile
+        if (online) runQueued();
+    }
+
+    private void setOnline(boolean now) {
+        final boolean before = online;
+        online = now;
+        if (now != before) {
+            Log.i("NET", now ? "Network available" : "Network lost");
+        }
+        if (now) runQueued();
+    }
+
+    private void runQueued() {
+        final ArrayList<Runnable> tasks;
+        synchronized (this) {
+            if (queued.isEmpty()) return;
+            tasks = new ArrayList<>(queued.values());
+            queued.clear();
+        }
+        for (Runnable task : tasks) {
+            mainHandler.post(task);
+        }
+    }
+
+    private boolean queryOnline() {
+        if (manager == null) return true;
+        NetworkInfo info = manager.getActiveNetworkInfo();
+        return info != null && info.isConnected();
+    }
+}
@@ -0,0 +1,77 @@
+package dhbw.timetable.data;
+
+import java.util.List;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+
+/**
+ * 64 bit FNV-1a hashes over the content of appointments and weeks, computed without
+ * building strings. Equal content always gives equal hashes, so different hashes prove a
+ * change. Equal hashes are only very likely equal content and callers that must be exact
+ * compare with {@link #equal} afterwards.
+ */
+public final class ContentHash {
+
+    static final long OFFSET = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private ContentHash() {
+    }
+
+    public static long of(BackportAppointment a) {
+        long h = OFFSET;
+        h = mix(h, a.getStartDate().getTimeInMillis());
+        h = mix(h, a.getEndDate().getTimeInMillis());
+        h = mix(h, a.getTitle());
+        h = mix(h, a.getPersons());
+        return mix(h, a.getResources());
+    }
+
+    /**
+     * @return hash of the appointments in their order
+     */
+    public static long of(List<BackportAppointment> week) {
+        long h = OFFSET;
+        for (int i = 0; i < week.size(); i++) {
+            h = mix(h, of(week.get(i)));
+        }
+        return mix(h, week.size());
+    }
+
+    /**
+     * @return whether both appointments have the same times, title, persons and resources
+     */
+    public static boolean equal(BackportAppointment a, BackportAppointment b) {
+        return a == b || (a.getStartDate().getTimeInMillis() == b.getStartDate().getTimeInMillis()
+                && a.getEndDate().getTimeInMillis() == b.getEndDate().getTimeInMillis()
+                && equal(a.getTitle(), b.getTitle())
+                && equal(a.getPersons(), b.getPersons())
+                && equal(a.getResources(), b.getResources()));
+    }
+
+    static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    static long mix(long h, long value) {
+        for (int i = 0; i < 8; i++) {
+            h ^= value & 0xff;
+            h *= PRIME;
+            value >>>= 8;
+        }
+        return h;
+    }
+
+    static long mix(long h, String s) {
+        if (s == null) return mix(h, -1L);
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            h ^= c & 0xff;
+            h *= PRIME;
+            h ^= c >>> 8;
+            h *= PRIME;
+        }
+        // Length ends the string, so "ab" + "c" and "a" + "bc" differ
+        return mix(h, s.length());
+    }
+}
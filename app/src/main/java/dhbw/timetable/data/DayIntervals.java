@@ -0,0 +1,188 @@
+package dhbw.timetable.data;
+
+import java.util.Arrays;
+import java.util.List;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+
+/**
+ * Minute ranges [start, end) of the appointments of one day, for overlap queries.
+ * The intervals are sorted by start with a tree of the maximum end over the sorted
+ * positions, so {@link #overlapping} visits only subtrees that can contain a hit.
+ * Concurrency at a minute is two binary searches.
+ * <p>
+ * The maximum concurrency and the layout lanes are computed when building, by a sweep in
+ * order of start that scans the open lanes for every interval. Building takes
+ * O(n log n) for sorting plus O(n * lanes) for the sweep, which for the few lanes of a
+ * day beats keeping the lane ends in a heap.
+ * <p>
+ * Intervals are referred to by their position in the input. Empty intervals overlap
+ * nothing, for the lanes they only collide with intervals running across them.
+ */
+public final class DayIntervals {
+
+    private final int[] starts; // Sorted by start
+    private final int[] ends; // In the order of starts
+    private final int[] order; // Input position of each sorted interval
+    private final int[] sortedEnds;
+    private final int[] maxEnd; // Implicit tree over the sorted positions, root at 1
+    private final int[] lanes; // By input position
+    private final int laneCount;
+    private final int maxConcurrency;
+
+    private DayIntervals(int[] starts, int[] ends, int[] order) {
+        final int size = starts.length;
+        this.starts = starts;
+        this.ends = ends;
+        this.order = order;
+        sortedEnds = ends.clone();
+        Arrays.sort(sortedEnds);
+
+        int leaves = 1;
+        while (leaves < size) leaves <<= 1;
+        maxEnd = new int[2 * leaves];
+        Arrays.fill(maxEnd, Integer.MIN_VALUE);
+        for (int i = 0; i < size; i++) maxEnd[leaves + i] = ends[i];
+        for (int node = leaves - 1; node > 0; node--) {
+            maxEnd[node] = Math.max(maxEnd[2 * node], maxEnd[2 * node + 1]);
+        }
+
+        // Sweep in order of start: an interval takes the lowest lane whose last interval
+        // has ended, so intervals of the same lane never overlap. Scanning all lanes also
+        // counts the intervals running at its start.
+        lanes = new int[size];
+        final int[] laneStart = new int[size], laneEnd = new int[size]; // Of the last interval
+        int count = 0, max = 0;
+        for (int i = 0; i < size; i++) {
+            final int start = starts[i];
+            final boolean empty = ends[i] == start;
+            int lane = -1, running = 0;
+            for (int l = 0; l < count; l++) {
+                if (laneEnd[l] > start) {
+                    running++;
+                    // An empty interval only collides with intervals running across it
+                    if (empty && lane < 0 && laneStart[l] == start) lane = l;
+                } else if (lane < 0) {
+                    lane = l;
+                }
+            }
+            if (lane < 0) {
+                lane = count++;
+                laneStart[lane] = laneEnd[lane] = Integer.MIN_VALUE;
+            }
+            lanes[order[i]] = lane;
+            // Empty intervals occupy no lane
+            if (empty) continue;
+            laneStart[lane] = start;
+            laneEnd[lane] = ends[i];
+            max = Math.max(max, running + 1);
+        }
+        laneCount = count;
+        maxConcurrency = max;
+    }
+
+    public static DayIntervals of(int[] starts, int[] ends) {
+        final int size = starts.length;
+        // Start and input position in one long, so intervals starting together keep their
+        // input order. Minutes of the day are never negative.
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) sorted[i] = (long) starts[i] << 32 | i;
+        Arrays.sort(sorted);
+        int[] sortedStarts = new int[size], sortedEndsByStart = new int[size], order = new int[size];
+        for (int i = 0; i < size; i++) {
+            final int input = (int) sorted[i];
+            order[i] = input;
+            sortedStarts[i] = starts[input];
+            sortedEndsByStart[i] = Math.max(ends[input], starts[input]);
+        }
+        return new DayIntervals(sortedStarts, sortedEndsByStart, order);
+    }
+
+    /**
+     * @return intervals of the start and end minutes of the appointments
+     */
+    public static DayIntervals of(List<BackportAppointment> appointments) {
+        final int size = appointments.size();
+        int[] starts = new int[size], ends = new int[size];
+        for (int i = 0; i < size; i++) {
+            starts[i] = EpochDays.minuteOfDay(appointments.get(i).getStartDate());
+            ends[i] = EpochDays.minuteOfDay(appointments.get(i).getEndDate());
+        }
+        return of(starts, ends);
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * @return input positions of the intervals overlapping [start, end), in order of start
+     */
+    public int[] overlapping(int start, int end) {
+        if (end <= start) return new int[0];
+        // Only intervals starting before end can overlap
+        final int candidates = lowerBound(starts, end);
+        int[] found = new int[candidates];
+        final int count = collect(1, 0, maxEnd.length / 2, candidates, start, found, 0);
+        return Arrays.copyOf(found, count);
+    }
+
+    private int collect(int node, int from, int to, int limit, int start, int[] found, int count) {
+        if (from >= limit || maxEnd[node] <= start) return count;
+        if (to - from == 1) {
+            if (ends[from] > starts[from]) found[count++] = order[from];
+            return count;
+        }
+        final int mid = (from + to) >>> 1;
+        count = collect(2 * node, from, mid, limit, start, found, count);
+        return collect(2 * node + 1, mid, to, limit, start, found, count);
+    }
+
+    /**
+     * @return number of intervals running at the given minute
+     */
+    public int concurrencyAt(int minute) {
+        // Empty intervals have end == start and cancel out
+        return upperBound(starts, minute) - upperBound(sortedEnds, minute);
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return column of the interval at the given input position, starting at 0, so that
+     * intervals in the same column never overlap. Columns are assigned in order of start,
+     * each interval taking the lowest free one.
+     */
+    public int getLane(int i) {
+        return lanes[i];
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    /**
+     * @return first position with a value not below key
+     */
+    private static int lowerBound(int[] values, int key) {
+        int low = 0, high = values.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return first position with a value above key
+     */
+    private static int upperBound(int[] values, int key) {
+        return lowerBound(values, key + 1);
+    }
+}
@@ -0,0 +1,139 @@
+package dhbw.timetable.data;
+
+import java.util.Arrays;
+
+/**
+ * Map from epoch days to values with open addressing over a primitive key array, so
+ * lookups neither box the key nor hash a Calendar. Not thread safe, a map shared
+ * between threads must not be modified after it was published.
+ */
+public final class EpochDayMap<V> {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private Object[] values;
+    private int size = 0;
+
+    public EpochDayMap() {
+        this(8);
+    }
+
+    public EpochDayMap(int expectedSize) {
+        int capacity = 8;
+        while (capacity * LOAD_FACTOR < expectedSize) capacity <<= 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    public EpochDayMap(EpochDayMap<V> other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        size = other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int day) {
+        return values[slot(day)] != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int day) {
+        return (V) values[slot(day)];
+    }
+
+    /**
+     * @return the previous value of the day, null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int day, V value) {
+        if (value == null) throw new NullPointerException("Null values are not supported");
+        int slot = slot(day);
+        final V previous = (V) values[slot];
+        if (previous == null) {
+            if (size + 1 > keys.length * LOAD_FACTOR) {
+                resize(keys.length << 1);
+                slot = slot(day);
+            }
+            keys[slot] = day;
+            size++;
+        }
+        values[slot] = value;
+        return previous;
+    }
+
+    /**
+     * @return the removed value, null if the day was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int day) {
+        int slot = slot(day);
+        final V removed = (V) values[slot];
+        if (removed == null) return null;
+        values[slot] = null;
+        size--;
+        // Move following entries of the probe sequence up, so lookups do not stop at the gap
+        final int mask = keys.length - 1;
+        int next = (slot + 1) & mask;
+        while (values[next] != null) {
+            final int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                values[next] = null;
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        return removed;
+    }
+
+    /**
+     * @return all days of the map in ascending order
+     */
+    public int[] keys() {
+        int[] days = new int[size];
+        int i = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (values[slot] != null) days[i++] = keys[slot];
+        }
+        Arrays.sort(days);
+        return days;
+    }
+
+    private int slot(int day) {
+        final int mask = keys.length - 1;
+        int slot = hash(day) & mask;
+        while (values[slot] != null && keys[slot] != day) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        final int[] oldKeys = keys;
+        final Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                final int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(int day) {
+        // Mondays are 7 apart, spread them over all slots
+        final int h = day * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,60 @@
+package dhbw.timetable.data;
+
+import java.util.Calendar;
+
+/**
+ * Integer arithmetic on days since 01.01.1970, so that dates can be stored and
+ * compared without going through Calendar field computations.
+ */
+public final class EpochDays {
+
+    private EpochDays() {
+    }
+
+    /**
+     * Days since epoch of the calendar day of c (time of day is ignored)
+     */
+    public static int of(Calendar c) {
+        return fromCivil(c.get(Calendar.YEAR), c.get(Calendar.MONTH) + 1, c.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * Days since epoch of the given proleptic gregorian date, month is 1 based
+     */
+    public static int fromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        final int era = (year >= 0 ? year : year - 399) / 400;
+        final int yoe = year - era * 400;
+        final int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * Sets year, month and day of target to the given epoch day. Time fields stay untouched.
+     */
+    public static void apply(int epochDay, Calendar target) {
+        final int z = epochDay + 719468;
+        final int era = (z >= 0 ? z : z - 146096) / 146097;
+        final int doe = z - era * 146097;
+        final int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final int mp = (5 * doy + 2) / 153;
+        final int day = doy - (153 * mp + 2) / 5 + 1;
+        final int month = mp < 10 ? mp + 3 : mp - 9;
+        final int year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        target.set(year, month - 1, day);
+    }
+
+    /**
+     * Epoch day of the monday of the week containing epochDay
+     */
+    public static int monday(int epochDay) {
+        // 01.01.1970 was a thursday
+        return epochDay - ((epochDay + 3) % 7 + 7) % 7;
+    }
+
+    public static int minuteOfDay(Calendar c) {
+        return c.get(Calendar.HOUR_OF_DAY) * 60 + c.get(Calendar.MINUTE);
+    }
+}
@@ -0,0 +1,219 @@
+package dhbw.timetable.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link OfflineStore}s of all timetables, one directory per timetable URL. Switching
+ * between timetables keeps their weeks. Once all stores together exceed {@link #MAX_BYTES},
+ * the least recently used ones are deleted, the one in use never is. A deleted store is
+ * closed and its directory renamed, the background writer deletes it after the writes
+ * queued before. Callers on the main thread never wait for the writer.
+ */
+public final class OfflineCache {
+
+    private static final String DIR = "timetables";
+    // Store directory before there was one per timetable
+    private static final String LEGACY_DIR = "weeks";
+    private static final String LAST_USED = "used";
+    // Store directories waiting to be deleted
+    private static final String EVICTED_SUFFIX = ".evicted";
+    static final long MAX_BYTES = 4 * 1024 * 1024;
+
+    private final Context context;
+    private final File dir;
+    private final Map<String, OfflineStore> stores = new HashMap<>();
+    private String current;
+
+    private OfflineCache(Context context, File dir) {
+        this.context = context;
+        this.dir = dir;
+    }
+
+    /**
+     * Opens the cache. Offline data of older versions is moved to the given timetable.
+     */
+    static OfflineCache open(Context context, String timetable) {
+        OfflineCache cache = new OfflineCache(context, new File(context.getFilesDir(), DIR));
+        if (!cache.dir.isDirectory() && !cache.dir.mkdirs()) {
+            Log.e("STORE", "Unable to create " + cache.dir);
+        }
+        File legacy = new File(context.getFilesDir(), LEGACY_DIR);
+        File target = cache.dirOf(timetable);
+        if (legacy.isDirectory() && !target.exists()) {
+            if (legacy.renameTo(target)) {
+                Log.i("STORE", "Moved offline weeks to timetable " + target.getName());
+            } else {
+                Log.w("STORE", "Unable to move " + legacy + " to " + target);
+            }
+        }
+        File[] dirs = cache.dir.listFiles();
+        if (dirs != null) {
+            for (final File d : dirs) {
+                // Left over by a process killed before the writer got to them
+                if (d.getName().endsWith(EVICTED_SUFFIX)) OfflineStore.afterWrites(() -> delete(d));
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the store of the given timetable URL and marks it as most recently used
+     */
+    public synchronized OfflineStore get(String timetable) {
+        OfflineStore store = stores.get(timetable);
+        if (store == null) {
+            store = OfflineStore.open(context, dirOf(timetable));
+            stores.put(timetable, store);
+        }
+        if (!timetable.equals(current)) {
+            current = timetable;
+            touch(dirOf(timetable));
+            trim();
+        }
+        return store;
+    }
+
+    /**
+     * Deletes the offline data of a timetable that is gone
+     *
+     * @return true if there was anything to delete
+     */
+    public synchronized boolean remove(String timetable) {
+        if (timetable.equals(current)) {
+            current = null;
+        }
+        final File storeDir = dirOf(timetable);
+        if (!storeDir.exists()) return false;
+        evict(storeDir);
+        return true;
+    }
+
+    /**
+     * Deletes least recently used stores until all stores fit into MAX_BYTES
+     */
+    private void trim() {
+        File[] dirs = dir.listFiles();
+        if (dirs == null) return;
+        final File keep = current != null ? dirOf(current) : null;
+        long total = 0;
+        List<File> candidates = new ArrayList<>();
+        for (File d : dirs) {
+            if (!d.isDirectory() || d.getName().endsWith(EVICTED_SUFFIX)) continue;
+            total += sizeOf(d);
+            if (!d.equals(keep)) candidates.add(d);
+        }
+        if (total <= MAX_BYTES) return;
+
+        final Map<File, Long> lastUsed = new HashMap<>();
+        for (File d : candidates) lastUsed.put(d, lastUsed(d));
+        Collections.sort(candidates, (d1, d2) -> Long.compare(lastUsed.get(d1), lastUsed.get(d2)));
+        for (File d : candidates) {
+            if (total <= MAX_BYTES) break;
+            final long size = sizeOf(d);
+            evict(d);
+            total -= size;
+            Log.i("STORE", "Evicted offline data " + d.getName() + " of " + size + " bytes");
+        }
+    }
+
+    private void evict(File storeDir) {
+        // Out of the way at once, so the timetable can be opened again while it is deleted
+        final File evicted = new File(dir, storeDir.getName() + "." + System.nanoTime() + EVICTED_SUFFIX);
+        final File doomed = storeDir.renameTo(evicted) ? evicted : storeDir;
+        Runnable deletion = () -> delete(doomed);
+        for (Map.Entry<String, OfflineStore> store : stores.entrySet()) {
+            if (dirOf(store.getKey()).equals(storeDir)) {
+                // Saves from now on are dropped, queued ones are written before the deletion
+                stores.remove(store.getKey()).close(deletion);
+                return;
+            }
+        }
+        OfflineStore.afterWrites(deletion);
+    }
+
+    private static void delete(File storeDir) {
+        File[] files = storeDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!f.delete()) Log.w("STORE", "Unable to delete " + f);
+            }
+        }
+        if (!storeDir.delete()) {
+            Log.w("STORE", "Unable to delete " + storeDir);
+        }
+    }
+
+    private File dirOf(String timetable) {
+        return new File(dir, nameOf(timetable));
+    }
+
+    private static void touch(File storeDir) {
+        if (!storeDir.isDirectory()) return;
+        try {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(storeDir, LAST_USED)));
+            try {
+                out.writeLong(System.currentTimeMillis());
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.w("STORE", "Unable to mark " + storeDir + " as used: " + e);
+        }
+    }
+
+    private static long lastUsed(File storeDir) {
+        File file = new File(storeDir, LAST_USED);
+        if (!file.exists()) return 0;
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                return in.readLong();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long sizeOf(File storeDir) {
+        long size = 0;
+        File[] files = storeDir.listFiles();
+        if (files != null) {
+            for (File f : files) size += f.length();
+        }
+        return size;
+    }
+
+    /**
+     * Directory name of a timetable URL, URLs contain characters not allowed in file names
+     */
+    private static String nameOf(String timetable) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(timetable.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder("t");
+            for (int i = 0; i < 8; i++) {
+                sb.append(Character.forDigit((digest[i] >> 4) & 0xF, 16))
+                        .append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return "t" + Integer.toHexString(timetable.hashCode());
+        }
+    }
+}
@@ -0,0 +1,820 @@
+package dhbw.timetable.data;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import dhbw.timetable.BuildConfig;
+import dhbw.timetable.R;
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+
+/**
+ * Offline copy of the timetables. Every week lives in its own {@link SnapshotFormat} file
+ * named after the epoch day of its monday. A small manifest keeps the checksum of each
+ * week, so saving only touches the weeks whose content actually changed.
+ * <p>
+ * Files are replaced atomically (temp file, fsync, rename), so a killed process leaves
+ * either the old or the new version of a week behind. {@link #saveAsync} hands the weeks
+ * to a background writer and merges saves that arrive before the previous one was
+ * written. Until then readers get the queued weeks from memory.
+ * <p>
+ * Once a week is on disk, later saves only append its changed appointments to a
+ * {@link ChangeJournal}, which is replayed when the week is read. When the journal
+ * grows beyond {@link #COMPACT_BYTES} it is compacted into the week files. Week files
+ * go through the {@link StreamCodec} selected at build time.
+ * <p>
+ * The manifest also keeps the checksum of every week file as written. A week whose file
+ * does not match it or can not be parsed is skipped by the readers and reported by
+ * {@link #getStaleWeeks} until it is saved again. So are all weeks if the string table
+ * fails its checksums.
+ * <p>
+ * Writers hold {@link #writeLock} for a whole save. Files are written and fsynced outside
+ * of the monitor of the store, which readers hold. It is only taken to switch readers to
+ * a written file together with its checksum, so reads do not wait for a save.
+ */
+public final class OfflineStore {
+
+    private static final String MANIFEST = "manifest";
+    private static final String JOURNAL = "journal";
+    private static final String STRINGS = "strings";
+    private static final String SYNC_LOG = "synclog";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final short MANIFEST_VERSION = 2;
+    private static final short MANIFEST_VERSION_CONTENT_ONLY = 1;
+    static final int COMPACT_BYTES = 32 * 1024;
+    static final int MAX_RETRIES = 5;
+
+    private final File dir;
+    private final ChangeJournal journal;
+    private final StringTable strings;
+    private final SyncLog syncLog;
+    private final StreamCodec codec = StreamCodec.forName(BuildConfig.OFFLINE_CODEC);
+    // One save at a time. Lock order is writeLock, this, pendingLock.
+    private final Object writeLock = new Object();
+    // Guarded by this. Checksums of the saved content and of the week files as written
+    private final TreeMap<Integer, Long> manifest = new TreeMap<>();
+    private final Map<Integer, Long> fileChecksums = new HashMap<>();
+    private final TreeSet<Integer> stale = new TreeSet<>();
+
+    private final Object pendingLock = new Object();
+    private final TreeMap<Integer, Map.Entry<TimelessDate, ArrayList<BackportAppointment>>> pending = new TreeMap<>();
+    private final ArrayList<Runnable> onSaved = new ArrayList<>();
+    private boolean flushQueued = false;
+    private boolean closed = false;
+    private int coalesced = 0;
+    private int failedWrites = 0;
+    // Delay of the first retry of a failed background write, doubled for every further one
+    long retryMillis = 30 * 1000L;
+
+    // Shared by the stores of all timetables
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Write metrics, guarded by this
+    private long lastWriteMillis = 0, totalWriteMillis = 0;
+    private int writes = 0;
+
+    private OfflineStore(File dir) {
+        this.dir = dir;
+        this.journal = new ChangeJournal(new File(dir, JOURNAL));
+        this.strings = new StringTable(new File(dir, STRINGS));
+        this.syncLog = new SyncLog(new File(dir, SYNC_LOG));
+    }
+
+    /**
+     * Opens the store in the given directory and migrates a single file snapshot of
+     * older versions into it
+     */
+    static OfflineStore open(Context context, File dir) {
+        OfflineStore store = open(dir);
+        store.migrate(context.getFileStreamPath(context.getResources().getString(R.string.TIMETABLES_FILE)));
+        return store;
+    }
+
+    /**
+     * Opens the store in the given directory
+     */
+    static OfflineStore open(File dir) {
+        OfflineStore store = new OfflineStore(dir);
+        if (!store.dir.isDirectory() && !store.dir.mkdirs()) {
+            Log.e("STORE", "Unable to create " + store.dir);
+        }
+        store.deleteTempFiles();
+        try {
+            store.readManifest();
+        } catch (IOException e) {
+            Log.w("STORE", "No readable manifest: " + e);
+        }
+        try {
+            if (store.finishCompaction(Collections.<Integer, Long>emptyMap())) {
+                store.writeManifest();
+            }
+            if (!store.strings.load()) {
+                // Week files may refer to any of the lost strings
+                store.stale.addAll(store.manifest.keySet());
+                Log.w("STORE", "All " + store.stale.size() + " weeks marked stale");
+            }
+            store.journal.load();
+            for (int monday : store.journal.unorderedWeeks()) {
+                // Matches no content, so the next save writes the week in its actual order
+                if (store.manifest.containsKey(monday)) store.manifest.put(monday, 0L);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            Log.e("STORE", "Unable to open compaction, strings or journal!");
+        }
+        try {
+            store.syncLog.load();
+        } catch (IOException e) {
+            Log.w("STORE", "No readable sync log, all weeks are due: " + e);
+        }
+        return store;
+    }
+
+    /**
+     * Migrates a single file snapshot of older versions into the store
+     */
+    private void migrate(File legacy) {
+        if (legacy.exists()) {
+            Log.i("STORE", "Migrating " + legacy + " into weekly files...");
+            Map<TimelessDate, ArrayList<BackportAppointment>> weeks = new HashMap<>();
+            try {
+                FileInputStream fis = new FileInputStream(legacy);
+                SnapshotReader.read(fis, new SnapshotReader.Collector(weeks));
+                fis.close();
+                save(weeks);
+            } catch (IOException e) {
+                e.printStackTrace();
+                Log.e("STORE", "Migration FAILED!");
+            }
+            if (!legacy.delete()) {
+                Log.w("STORE", "Unable to delete " + legacy);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        synchronized (pendingLock) {
+            if (!pending.isEmpty()) return false;
+        }
+        synchronized (this) {
+            return manifest.isEmpty();
+        }
+    }
+
+    public boolean hasWeek(int monday) {
+        synchronized (pendingLock) {
+            if (pending.containsKey(monday)) return true;
+        }
+        synchronized (this) {
+            return manifest.containsKey(monday) && !stale.contains(monday);
+        }
+    }
+
+    /**
+     * @return epoch days of the mondays of all readable weeks in ascending order
+     */
+    public synchronized Set<Integer> weeks() {
+        TreeSet<Integer> weeks = new TreeSet<>(manifest.keySet());
+        weeks.removeAll(stale);
+        synchronized (pendingLock) {
+            weeks.addAll(pending.keySet());
+        }
+        return Collections.unmodifiableSet(weeks);
+    }
+
+    /**
+     * Epoch days of the mondays of the weeks that turned out to be damaged. They need to
+     * be downloaded and saved again.
+     */
+    public synchronized Set<Integer> getStaleWeeks() {
+        return Collections.unmodifiableSet(new TreeSet<>(stale));
+    }
+
+    /**
+     * Streams all stored weeks to the callback. Damaged weeks are marked stale and
+     * skipped, they do not stop the others.
+     */
+    public synchronized void read(SnapshotReader.Callback callback) {
+        for (int monday : weeks()) {
+            try {
+                readWeek(monday, callback);
+            } catch (IOException e) {
+                // Already marked stale
+            }
+        }
+    }
+
+    /**
+     * Streams the week of the given monday to the callback. A damaged week is marked
+     * stale and nothing of it is passed to the callback.
+     */
+    public synchronized void read(int monday, SnapshotReader.Callback callback) throws IOException {
+        if (hasWeek(monday)) {
+            readWeek(monday, callback);
+        }
+    }
+
+    /**
+     * Queues the given weeks for {@link #save} on the background writer and returns
+     * immediately. Weeks queued again before the writer got to them are written only
+     * once, in their latest version.
+     * <p>
+     * A failed write keeps the weeks queued and is retried up to {@link #MAX_RETRIES} times
+     * with exponential backoff. After that the weeks are written by the next save.
+     *
+     * @param onError called on the main thread if writing failed, may be null
+     */
+    public void saveAsync(Map<TimelessDate, ArrayList<BackportAppointment>> weeks, final ErrorCallback onError) {
+        saveAsync(weeks, null, onError);
+    }
+
+    /**
+     * Like {@link #saveAsync(Map, ErrorCallback)}, with a callback once the weeks are written.
+     *
+     * @param saved run on the background writer once the weeks are on disk, may be null.
+     *              If writing failed, it runs after a later write succeeded.
+     */
+    void saveAsync(Map<TimelessDate, ArrayList<BackportAppointment>> weeks, Runnable saved, final ErrorCallback onError) {
+        synchronized (pendingLock) {
+            if (closed) {
+                Log.w("STORE", "Dropping save of " + weeks.size() + " weeks into a closed store");
+                return;
+            }
+            for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : weeks.entrySet()) {
+                // Copy, the caller keeps modifying its lists
+                pending.put(EpochDays.of(week.getKey()), new AbstractMap.SimpleImmutableEntry<>(
+                        (TimelessDate) week.getKey().clone(), new ArrayList<>(week.getValue())));
+            }
+            if (saved != null) onSaved.add(saved);
+            if (flushQueued) {
+                coalesced++;
+                Log.i("STORE", "Merged save into the queued write");
+                return;
+            }
+            flushQueued = true;
+        }
+        WRITER.execute(() -> flush(onError));
+    }
+
+    private void flush(final ErrorCallback onError) {
+        Map<TimelessDate, ArrayList<BackportAppointment>> batch = new HashMap<>();
+        final ArrayList<Runnable> callbacks;
+        synchronized (pendingLock) {
+            for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : pending.values()) {
+                batch.put(week.getKey(), week.getValue());
+            }
+            callbacks = new ArrayList<>(onSaved);
+            onSaved.clear();
+            flushQueued = false;
+        }
+
+        final long start = SystemClock.elapsedRealtime();
+        try {
+            save(batch);
+        } catch (IOException e) {
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw);
+            e.printStackTrace(pw);
+            final String errMSG = e.getMessage() + "\n" + sw.toString();
+            e.printStackTrace();
+            Log.e("STORE", "Background write FAILED! Keeping " + batch.size() + " weeks in memory");
+            final int failures;
+            synchronized (pendingLock) {
+                // The files are being deleted
+                if (closed) return;
+                // Their weeks are only written by a later save
+                onSaved.addAll(0, callbacks);
+                failures = ++failedWrites;
+            }
+            if (failures <= MAX_RETRIES) {
+                final long delay = retryMillis << (failures - 1);
+                Log.i("STORE", "Retrying write in " + delay + "ms");
+                WRITER.schedule(this::retry, delay, TimeUnit.MILLISECONDS);
+            }
+            if (onError != null) {
+                mainHandler.post(() -> onError.onError(errMSG));
+            }
+            return;
+        } finally {
+            synchronized (this) {
+                lastWriteMillis = SystemClock.elapsedRealtime() - start;
+            }
+        }
+        synchronized (pendingLock) {
+            failedWrites = 0;
+            // Only drop what was written, newer versions queued meanwhile stay
+            for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : batch.entrySet()) {
+                final int monday = EpochDays.of(week.getKey());
+                Map.Entry<TimelessDate, ArrayList<BackportAppointment>> queued = pending.get(monday);
+                if (queued != null && queued.getValue() == week.getValue()) {
+                    pending.remove(monday);
+                }
+            }
+        }
+        synchronized (this) {
+            totalWriteMillis += lastWriteMillis;
+            writes++;
+        }
+        Log.i("STORE", "Background write took " + lastWriteMillis + "ms (avg " + getAverageWriteMillis()
+                + "ms over " + writes + " writes, " + getCoalescedCount() + " saves merged)");
+        for (Runnable callback : callbacks) {
+            try {
+                callback.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Writes the weeks still queued after a failed write, unless a save queued meanwhile
+     * writes them anyway. Runs on the background writer.
+     */
+    private void retry() {
+        synchronized (pendingLock) {
+            if (closed || flushQueued || pending.isEmpty()) return;
+            flushQueued = true;
+        }
+        flush(null);
+    }
+
+    /**
+     * Writes every given week whose content differs from the stored one. Weeks that are
+     * not part of the map stay untouched.
+     *
+     * @return number of weeks written
+     */
+    public int save(Map<TimelessDate, ArrayList<BackportAppointment>> weeks) throws IOException {
+        synchronized (writeLock) {
+            return saveLocked(weeks);
+        }
+    }
+
+    private int saveLocked(Map<TimelessDate, ArrayList<BackportAppointment>> weeks) throws IOException {
+        int written = 0;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        CRC32 crc = new CRC32();
+        for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : weeks.entrySet()) {
+            final int monday = EpochDays.of(week.getKey());
+            strings.addAll(week.getValue());
+            buffer.reset();
+            SnapshotFormat.write(Collections.singletonMap(week.getKey(), week.getValue()), buffer, strings);
+            crc.reset();
+            crc.update(buffer.toByteArray(), 0, buffer.size());
+            final long checksum = crc.getValue();
+
+            final Long stored;
+            final boolean damaged;
+            synchronized (this) {
+                stored = manifest.get(monday);
+                damaged = stale.contains(monday);
+            }
+            if (stored != null && stored == checksum && !damaged) continue;
+
+            if (stored == null || damaged || !journalChanges(monday, week.getValue())) {
+                if (journal.hasChanges(monday)) {
+                    // The new week file would be replayed on top of its old changes
+                    compact();
+                }
+                writeWeekFile(monday, buffer);
+            }
+            synchronized (this) {
+                manifest.put(monday, checksum);
+            }
+            written++;
+        }
+        boolean compacted = false;
+        if (journal.length() > COMPACT_BYTES) {
+            compact();
+            compacted = true;
+        }
+        // Manifest last. A week file written before a crash fails its checksum and is
+        // downloaded again, journaled changes are just compared again next time.
+        if (written > 0 || compacted) {
+            writeManifest();
+        }
+        Log.i("STORE", "Saved " + written + " of " + weeks.size() + " weeks, journal has "
+                + journal.length() + " bytes");
+        return written;
+    }
+
+    /**
+     * Appends the changes between the stored and the given version of a week to the journal
+     *
+     * @return false if the stored version could not be read or the journal can not
+     * reproduce the order of the given version
+     */
+    private boolean journalChanges(int monday, ArrayList<BackportAppointment> now) {
+        try {
+            final int bytes = journal.append(monday, readStoredWeek(monday), now);
+            if (bytes < 0) {
+                Log.i("STORE", "Rewriting reordered week " + monday);
+                return false;
+            }
+            Log.i("STORE", "Journaled " + bytes + " bytes of changes for week " + monday);
+            return true;
+        } catch (IOException e) {
+            Log.w("STORE", "Rewriting week " + monday + " completely: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the replayed journal into the week files. The journal is deleted once all
+     * compacted weeks are on disk, which is the point where the compaction takes effect.
+     */
+    private void compact() throws IOException {
+        final long start = SystemClock.elapsedRealtime();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ArrayList<Integer> compacted = new ArrayList<>(journal.weeks());
+        Map<Integer, Long> checksums = new HashMap<>();
+        ArrayList<Integer> dropped = new ArrayList<>();
+        for (int monday : compacted) {
+            ArrayList<BackportAppointment> week;
+            try {
+                week = readStoredWeek(monday);
+            } catch (IOException e) {
+                // Nothing to replay the changes on, the week is forgotten and downloaded again
+                Log.w("STORE", "Dropping unreadable week " + monday + " with its journal: " + e);
+                dropped.add(monday);
+                continue;
+            }
+            TimelessDate date = new TimelessDate();
+            EpochDays.apply(monday, date);
+            strings.addAll(week);
+            buffer.reset();
+            SnapshotFormat.write(Collections.singletonMap(date, week), buffer, strings);
+            final ByteArrayOutputStream encoded = encode(buffer);
+            writeAtomically(new File(dir, weekFile(monday).getName() + COMPACT_SUFFIX), encoded);
+            checksums.put(monday, checksum(encoded.toByteArray()));
+        }
+        synchronized (this) {
+            // Readers switch from the journal to the compacted weeks at once
+            journal.reset();
+            for (int monday : dropped) {
+                manifest.remove(monday);
+            }
+            finishCompaction(checksums);
+        }
+        Log.i("STORE", "Compacted journal into " + compacted.size() + " weeks in "
+                + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    /**
+     * Moves compacted weeks into place, or drops them if the journal they were made of
+     * still exists. Checksums not given are taken from the files themselves, which covers
+     * a compaction finished when the store is opened after a crash.
+     *
+     * @return true if any week was moved into place
+     */
+    private boolean finishCompaction(Map<Integer, Long> checksums) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) return false;
+        final boolean committed = !new File(dir, JOURNAL).exists();
+        boolean moved = false;
+        for (File f : files) {
+            final String name = f.getName();
+            if (!name.endsWith(COMPACT_SUFFIX)) continue;
+            final File target = new File(dir, name.substring(0, name.length() - COMPACT_SUFFIX.length()));
+            if (committed) {
+                final Long known = checksums.get(weekOf(target));
+                fileChecksums.put(weekOf(target), known != null ? known : checksum(readFile(f)));
+            }
+            if (committed ? !f.renameTo(target) : !f.delete()) {
+                Log.w("STORE", "Unable to finish compaction of " + f);
+            }
+            moved |= committed;
+        }
+        return moved;
+    }
+
+    /**
+     * Stops taking saves. Returns immediately, the given task runs on the background
+     * writer once the saves queued before are written, so it may delete the files.
+     */
+    void close(Runnable then) {
+        synchronized (pendingLock) {
+            closed = true;
+        }
+        afterWrites(then);
+    }
+
+    /**
+     * Runs the task on the background writer after the saves queued before
+     */
+    static void afterWrites(Runnable task) {
+        WRITER.execute(task);
+    }
+
+    /**
+     * Deletes all stored and queued weeks
+     *
+     * @return true if there was anything to delete
+     */
+    public boolean clear() {
+        synchronized (writeLock) {
+            synchronized (this) {
+                return clearLocked();
+            }
+        }
+    }
+
+    private boolean clearLocked() {
+        boolean deleted;
+        synchronized (pendingLock) {
+            deleted = !pending.isEmpty();
+            pending.clear();
+            onSaved.clear();
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                deleted |= f.delete();
+            }
+        }
+        manifest.clear();
+        fileChecksums.clear();
+        stale.clear();
+        syncLog.clear();
+        try {
+            journal.reset();
+            strings.reset();
+        } catch (IOException e) {
+            Log.w("STORE", "Unable to reset journal or strings: " + e);
+        }
+        return deleted;
+    }
+
+    /**
+     * @return download times of the weeks of this store
+     */
+    SyncLog getSyncLog() {
+        return syncLog;
+    }
+
+    public synchronized long getLastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    public synchronized long getAverageWriteMillis() {
+        return writes > 0 ? totalWriteMillis / writes : 0;
+    }
+
+    public synchronized int getWriteCount() {
+        return writes;
+    }
+
+    public int getCoalescedCount() {
+        synchronized (pendingLock) {
+            return coalesced;
+        }
+    }
+
+    private void readWeek(int monday, SnapshotReader.Callback callback) throws IOException {
+        Map.Entry<TimelessDate, ArrayList<BackportAppointment>> queued;
+        synchronized (pendingLock) {
+            queued = pending.get(monday);
+        }
+        if (queued != null) {
+            if (callback.onWeek(queued.getKey())) {
+                for (BackportAppointment a : queued.getValue()) {
+                    callback.onAppointment(queued.getKey(), a);
+                }
+            }
+            return;
+        }
+
+        ArrayList<BackportAppointment> week;
+        try {
+            week = readStoredWeek(monday);
+        } catch (IOException e) {
+            stale.add(monday);
+            Log.w("STORE", "Week " + monday + " is damaged, marked stale: " + e);
+            throw e;
+        }
+        TimelessDate date = new TimelessDate();
+        EpochDays.apply(monday, date);
+        if (callback.onWeek(date)) {
+            for (BackportAppointment a : week) {
+                callback.onAppointment(date, a);
+            }
+        }
+    }
+
+    /**
+     * Reads and verifies a week from disk and applies its journaled changes
+     */
+    private ArrayList<BackportAppointment> readStoredWeek(int monday) throws IOException {
+        final Long expected;
+        synchronized (this) {
+            // Its strings may have been lost, so it could decode to other ones
+            if (stale.contains(monday)) throw new IOException("Week " + monday + " is stale");
+            expected = fileChecksums.get(monday);
+        }
+        final byte[] data = readFile(weekFile(monday));
+        if (expected != null && expected != checksum(data)) {
+            throw new IOException("Checksum mismatch of week " + monday);
+        }
+        Map<TimelessDate, ArrayList<BackportAppointment>> base = new HashMap<>();
+        SnapshotReader.Collector collector = new SnapshotReader.Collector(base);
+        SnapshotReader.read(StreamCodec.decode(new ByteArrayInputStream(data)), strings, collector);
+        if (collector.getErrors() > 0) {
+            throw new IOException("Week " + monday + " is corrupt");
+        }
+        ArrayList<BackportAppointment> week = new ArrayList<>();
+        for (ArrayList<BackportAppointment> appointments : base.values()) {
+            week.addAll(appointments);
+        }
+        journal.apply(monday, week);
+        return week;
+    }
+
+    private File weekFile(int monday) {
+        return new File(dir, "w" + monday);
+    }
+
+    private static int weekOf(File weekFile) {
+        return Integer.parseInt(weekFile.getName().substring(1));
+    }
+
+    /**
+     * Encodes and writes a week file and remembers its checksum
+     */
+    private void writeWeekFile(int monday, ByteArrayOutputStream week) throws IOException {
+        final ByteArrayOutputStream encoded = encode(week);
+        final File target = weekFile(monday);
+        final File tmp = writeTemp(target, encoded);
+        synchronized (this) {
+            // Readers must not see the new file with the checksum of the old one
+            rename(tmp, target);
+            fileChecksums.put(monday, checksum(encoded.toByteArray()));
+            stale.remove(monday);
+        }
+    }
+
+    private static long checksum(byte[] data) {
+        return checksum(data, data.length);
+    }
+
+    static long checksum(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return crc.getValue();
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        final long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException(file + " is too large");
+        }
+        byte[] data = new byte[(int) length];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    private void deleteTempFiles() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            if (f.getName().endsWith(TMP_SUFFIX) && !f.delete()) {
+                Log.w("STORE", "Unable to delete " + f);
+            }
+        }
+    }
+
+    /**
+     * Encodes a week for its file. The manifest checksum is taken before, so it does not
+     * depend on the codec.
+     */
+    private ByteArrayOutputStream encode(ByteArrayOutputStream week) throws IOException {
+        if (codec == StreamCodec.IDENTITY) return week;
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(week.size());
+        OutputStream os = codec.wrap(encoded);
+        week.writeTo(os);
+        os.close();
+        return encoded;
+    }
+
+    /**
+     * Replaces target with data, so that a half written target is never seen
+     */
+    static void writeAtomically(File target, ByteArrayOutputStream data) throws IOException {
+        rename(writeTemp(target, data), target);
+    }
+
+    /**
+     * @return temp file next to target holding data, synced to disk
+     */
+    private static File writeTemp(File target, ByteArrayOutputStream data) throws IOException {
+        File tmp = new File(target.getPath() + TMP_SUFFIX);
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            data.writeTo(fos);
+            fos.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        return tmp;
+    }
+
+    private static void rename(File tmp, File target) throws IOException {
+        if (!tmp.renameTo(target)) {
+            throw new IOException("Unable to rename " + tmp + " to " + target);
+        }
+    }
+
+    /**
+     * Reads the manifest:
+     * <pre>
+     * short  version
+     * int    number of weeks
+     * for each week:
+     *   int   epoch day of the monday
+     *   long  CRC32 of the saved content
+     *   long  CRC32 of the week file (not in version 1)
+     * long   CRC32 of everything before (not in version 1)
+     * </pre>
+     */
+    private void readManifest() throws IOException {
+        manifest.clear();
+        fileChecksums.clear();
+        File file = new File(dir, MANIFEST);
+        if (!file.exists()) return;
+        final byte[] data = readFile(file);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        final short version = in.readShort();
+        if (version != MANIFEST_VERSION && version != MANIFEST_VERSION_CONTENT_ONLY) {
+            throw new IOException("Unsupported manifest version " + version);
+        }
+        if (version == MANIFEST_VERSION) {
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length - 8);
+            if (new DataInputStream(new ByteArrayInputStream(data, data.length - 8, 8)).readLong() != crc.getValue()) {
+                throw new IOException("Manifest checksum mismatch");
+            }
+        }
+        for (int count = in.readInt(); count > 0; count--) {
+            final int monday = in.readInt();
+            manifest.put(monday, in.readLong());
+            final long fileChecksum = version == MANIFEST_VERSION ? in.readLong() : 0;
+            if (fileChecksum != 0) {
+                fileChecksums.put(monday, fileChecksum);
+            }
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        synchronized (this) {
+            out.writeShort(MANIFEST_VERSION);
+            out.writeInt(manifest.size());
+            for (Map.Entry<Integer, Long> week : manifest.entrySet()) {
+                out.writeInt(week.getKey());
+                out.writeLong(week.getValue());
+                final Long fileChecksum = fileChecksums.get(week.getKey());
+                // 0 for files written under a version 1 manifest, they are not verified
+                out.writeLong(fileChecksum != null ? fileChecksum : 0);
+            }
+        }
+        out.flush();
+        out.writeLong(checksum(buffer.toByteArray()));
+        out.flush();
+        writeAtomically(new File(dir, MANIFEST), buffer);
+    }
+}
@@ -0,0 +1,178 @@
+package dhbw.timetable.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+
+/**
+ * Binary layout of the offline timetables file:
+ * <pre>
+ * int    MAGIC
+ * short  VERSION
+ * int    number of strings taken from the string table of the store
+ * int    number of own strings
+ *   UTF  string (length prefixed)
+ * int    number of weeks
+ * for each week:
+ *   int  epoch day of the monday
+ *   int  number of appointments
+ *   for each appointment:
+ *     byte   day within the week, 0 is monday
+ *     short  start minute of day
+ *     short  end minute of day
+ *     var    title, persons, resources as string index
+ * </pre>
+ * Titles, persons and resources repeat for every occurrence of a lecture, so every
+ * distinct string is stored once. Indexes below the number of table strings refer to the
+ * {@link StringTable} of the store, the ones above to the own strings of the file. Files
+ * written without a table only have own strings. Var ints use 7 bits per byte, low bits
+ * first.
+ * <p>
+ * Version 1 files carried no string table and stored every appointment as
+ * {@link #writeAppointment} does. Files without the magic header are in the old tab
+ * separated text format, see {@link SnapshotReader}.
+ */
+public final class SnapshotFormat {
+
+    static final int MAGIC = 0x44545446; // "DTTF"
+    static final short VERSION = 2;
+    static final short VERSION_INLINE_STRINGS = 1;
+
+    private SnapshotFormat() {
+    }
+
+    public static void write(Map<TimelessDate, ArrayList<BackportAppointment>> weeks, OutputStream os) throws IOException {
+        write(weeks, os, null);
+    }
+
+    /**
+     * Writes the weeks, referring to the strings of the table where possible
+     */
+    static void write(Map<TimelessDate, ArrayList<BackportAppointment>> weeks, OutputStream os,
+                      StringTable table) throws IOException {
+        // Only as many table strings as referenced, so the same weeks always encode the same
+        int tableSize = 0;
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (ArrayList<BackportAppointment> week : weeks.values()) {
+            for (BackportAppointment a : week) {
+                tableSize = addString(strings, a.getTitle(), table, tableSize);
+                tableSize = addString(strings, a.getPersons(), table, tableSize);
+                tableSize = addString(strings, a.getResources(), table, tableSize);
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(tableSize);
+        out.writeInt(strings.size());
+        for (String string : strings.keySet()) {
+            out.writeUTF(string);
+        }
+        out.writeInt(weeks.size());
+        for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : weeks.entrySet()) {
+            final int monday = EpochDays.of(week.getKey());
+            out.writeInt(monday);
+            out.writeInt(week.getValue().size());
+            for (BackportAppointment a : week.getValue()) {
+                out.writeByte(EpochDays.of(a.getStartDate()) - monday);
+                out.writeShort(EpochDays.minuteOfDay(a.getStartDate()));
+                out.writeShort(EpochDays.minuteOfDay(a.getEndDate()));
+                writeVarInt(stringIndex(strings, a.getTitle(), table, tableSize), out);
+                writeVarInt(stringIndex(strings, a.getPersons(), table, tableSize), out);
+                writeVarInt(stringIndex(strings, a.getResources(), table, tableSize), out);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes a self-contained appointment record as used by the change journal and
+     * version 1 files
+     */
+    static void writeAppointment(BackportAppointment a, DataOutputStream out) throws IOException {
+        out.writeInt(EpochDays.of(a.getStartDate()));
+        out.writeInt(EpochDays.minuteOfDay(a.getStartDate()));
+        out.writeInt(EpochDays.minuteOfDay(a.getEndDate()));
+        out.writeUTF(nonNull(a.getTitle()));
+        out.writeUTF(nonNull(a.getPersons()));
+        out.writeUTF(nonNull(a.getResources()));
+    }
+
+    /**
+     * Counterpart of {@link #writeAppointment} for single records. Bulk reads go through
+     * {@link SnapshotReader}, which shares dates between appointments.
+     */
+    static BackportAppointment readAppointment(DataInputStream in) throws IOException {
+        TimelessDate date = new TimelessDate();
+        EpochDays.apply(in.readInt(), date);
+        final int start = in.readInt();
+        final int end = in.readInt();
+        return new BackportAppointment(timeRange(start, end), date, in.readUTF(), in.readUTF(), in.readUTF());
+    }
+
+    /**
+     * Formats two minutes of day as the "HH:mm-HH:mm" time range BackportAppointment expects
+     */
+    static String timeRange(int start, int end) {
+        return new String(new char[]{
+                digit(start / 600), digit(start / 60 % 10), ':', digit(start % 60 / 10), digit(start % 10),
+                '-',
+                digit(end / 600), digit(end / 60 % 10), ':', digit(end % 60 / 10), digit(end % 10)});
+    }
+
+    static void writeVarInt(int value, DataOutputStream out) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed var int");
+    }
+
+    /**
+     * Adds s to the own strings unless the table has it
+     *
+     * @return number of table strings needed to cover s
+     */
+    private static int addString(Map<String, Integer> strings, String s, StringTable table, int tableSize) {
+        s = nonNull(s);
+        final int id = table != null ? table.indexOf(s) : -1;
+        if (id >= 0) return Math.max(tableSize, id + 1);
+        if (!strings.containsKey(s)) {
+            strings.put(s, strings.size());
+        }
+        return tableSize;
+    }
+
+    private static int stringIndex(Map<String, Integer> strings, String s, StringTable table, int tableSize) {
+        s = nonNull(s);
+        final int id = table != null ? table.indexOf(s) : -1;
+        return id >= 0 ? id : tableSize + strings.get(s);
+    }
+
+    private static char digit(int d) {
+        return (char) ('0' + d);
+    }
+
+    private static String nonNull(String s) {
+        return s != null ? s : "";
+    }
+}
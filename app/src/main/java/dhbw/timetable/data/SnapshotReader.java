@@ -0,0 +1,269 @@
+package dhbw.timetable.data;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+
+/**
+ * Streams the records of an offline timetables file to a {@link Callback}. Understands
+ * both versions of the binary {@link SnapshotFormat} as well as the old tab separated
+ * text format.
+ */
+public final class SnapshotReader {
+
+    public interface Callback {
+        /**
+         * Called before the first appointment of a week. Return false to skip the week.
+         */
+        boolean onWeek(TimelessDate monday);
+
+        void onAppointment(TimelessDate monday, BackportAppointment appointment);
+
+        /**
+         * Called for every record that could not be read. The record is 1 based.
+         */
+        void onError(int record, Exception e);
+    }
+
+    /**
+     * Collects the streamed appointments into a week map, optionally only for the given mondays
+     */
+    public static class Collector implements Callback {
+        private final Map<TimelessDate, ArrayList<BackportAppointment>> target;
+        private final TimelessDate[] weeks;
+        private int errors = 0;
+
+        public Collector(Map<TimelessDate, ArrayList<BackportAppointment>> target, TimelessDate... weeks) {
+            this.target = target;
+            this.weeks = weeks.length > 0 ? weeks : null;
+        }
+
+        @Override
+        public boolean onWeek(TimelessDate monday) {
+            if (weeks == null) return true;
+            for (TimelessDate week : weeks) {
+                if (week.equals(monday)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onAppointment(TimelessDate monday, BackportAppointment appointment) {
+            ArrayList<BackportAppointment> week = target.get(monday);
+            if (week == null) {
+                week = new ArrayList<>();
+                target.put(monday, week);
+            }
+            week.add(appointment);
+        }
+
+        @Override
+        public void onError(int record, Exception e) {
+            errors++;
+            Log.w("SNAP", "Skipped record " + record + ": " + e);
+        }
+
+        public int getErrors() {
+            return errors;
+        }
+    }
+
+    private final Callback callback;
+    private final Map<Integer, TimelessDate> mondays = new HashMap<>();
+    // Reused for every appointment date, appointments only get clones of it
+    private final TimelessDate scratch = new TimelessDate();
+    private int scratchDay = Integer.MIN_VALUE;
+    private int currentMonday = Integer.MIN_VALUE;
+    private TimelessDate currentWeek;
+    private boolean currentWanted;
+
+    private SnapshotReader(Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Reads all records of the stream. The stream is not closed.
+     *
+     * @return number of appointments passed to the callback
+     */
+    public static int read(InputStream is, Callback callback) throws IOException {
+        return read(is, null, callback);
+    }
+
+    /**
+     * Reads all records of the stream, resolving string references into the given table
+     */
+    static int read(InputStream is, StringTable table, Callback callback) throws IOException {
+        SnapshotReader reader = new SnapshotReader(callback);
+        BufferedInputStream bis = new BufferedInputStream(is);
+        DataInputStream in = new DataInputStream(bis);
+        bis.mark(4);
+        if (in.readInt() != SnapshotFormat.MAGIC) {
+            bis.reset();
+            return reader.readLegacy(bis);
+        }
+        final short version = in.readShort();
+        if (version == SnapshotFormat.VERSION) {
+            return reader.readBinary(in, table);
+        } else if (version == SnapshotFormat.VERSION_INLINE_STRINGS) {
+            return reader.readInlineStrings(in);
+        }
+        throw new IOException("Unsupported offline data version " + version);
+    }
+
+    private int readBinary(DataInputStream in, StringTable table) throws IOException {
+        int record = 0, delivered = 0;
+        try {
+            // Every distinct string is decoded once and shared by all its appointments
+            final int tableSize = in.readInt();
+            if (tableSize > 0 && (table == null || table.size() < tableSize)) {
+                throw new IOException("String table misses entries of the file");
+            }
+            final String[] strings = new String[tableSize + in.readInt()];
+            for (int i = 0; i < tableSize; i++) {
+                strings[i] = table.get(i);
+            }
+            for (int i = tableSize; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+            for (int w = in.readInt(); w > 0; w--) {
+                final int monday = in.readInt();
+                final boolean wanted = enterWeek(monday);
+                for (int count = in.readInt(); count > 0; count--) {
+                    record++;
+                    final int epochDay = monday + in.readByte();
+                    final int start = in.readShort();
+                    final int end = in.readShort();
+                    final int title = SnapshotFormat.readVarInt(in);
+                    final int persons = SnapshotFormat.readVarInt(in);
+                    final int resources = SnapshotFormat.readVarInt(in);
+                    if (!wanted) continue;
+                    callback.onAppointment(currentWeek, new BackportAppointment(
+                            SnapshotFormat.timeRange(start, end), dateOf(epochDay),
+                            strings[title], strings[persons], strings[resources]));
+                    delivered++;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Binary records can not be resynchronized, everything after this is lost
+            callback.onError(record, e);
+        }
+        return delivered;
+    }
+
+    private int readInlineStrings(DataInputStream in) throws IOException {
+        int record = 0, delivered = 0;
+        try {
+            for (int w = in.readInt(); w > 0; w--) {
+                final boolean wanted = enterWeek(in.readInt());
+                for (int count = in.readInt(); count > 0; count--) {
+                    record++;
+                    if (!wanted) {
+                        in.skipBytes(12);
+                        skipUTF(in);
+                        skipUTF(in);
+                        skipUTF(in);
+                        continue;
+                    }
+                    final int epochDay = in.readInt();
+                    final int start = in.readInt();
+                    final int end = in.readInt();
+                    callback.onAppointment(currentWeek, new BackportAppointment(
+                            SnapshotFormat.timeRange(start, end), dateOf(epochDay),
+                            in.readUTF(), in.readUTF(), in.readUTF()));
+                    delivered++;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Binary records can not be resynchronized, everything after this is lost
+            callback.onError(record, e);
+        }
+        return delivered;
+    }
+
+    private int readLegacy(InputStream is) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(is));
+        int record = 0, delivered = 0;
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            record++;
+            if (line.isEmpty()) continue;
+            try {
+                // date \t time \t title \t persons \t resources
+                final int t1 = line.indexOf('\t');
+                final int t2 = line.indexOf('\t', t1 + 1);
+                final int t3 = line.indexOf('\t', t2 + 1);
+                final int t4 = line.indexOf('\t', t3 + 1);
+                final int d1 = line.indexOf('.');
+                final int d2 = line.indexOf('.', d1 + 1);
+                if (t1 < 0 || t2 < 0 || t3 < 0 || t4 < 0 || d2 < 0 || d2 > t1) {
+                    throw new IOException("Malformed line: " + line);
+                }
+                int end = line.indexOf('\t', t4 + 1);
+                if (end < 0) end = line.length();
+
+                final int epochDay = EpochDays.fromCivil(parseInt(line, d2 + 1, t1),
+                        parseInt(line, d1 + 1, d2), parseInt(line, 0, d1));
+                if (!enterWeek(EpochDays.monday(epochDay))) continue;
+
+                callback.onAppointment(currentWeek, new BackportAppointment(line.substring(t1 + 1, t2),
+                        dateOf(epochDay), line.substring(t2 + 1, t3), line.substring(t3 + 1, t4),
+                        line.substring(t4 + 1, end)));
+                delivered++;
+            } catch (IOException | RuntimeException e) {
+                callback.onError(record, e);
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Switches to the week of the given monday and returns whether the callback wants it
+     */
+    private boolean enterWeek(int monday) {
+        if (monday == currentMonday) return currentWanted;
+        currentMonday = monday;
+        currentWeek = mondays.get(monday);
+        if (currentWeek == null) {
+            currentWeek = (TimelessDate) scratch.clone();
+            EpochDays.apply(monday, currentWeek);
+            mondays.put(monday, currentWeek);
+        }
+        currentWanted = callback.onWeek(currentWeek);
+        return currentWanted;
+    }
+
+    private TimelessDate dateOf(int epochDay) {
+        if (epochDay != scratchDay) {
+            EpochDays.apply(epochDay, scratch);
+            scratchDay = epochDay;
+        }
+        return (TimelessDate) scratch.clone();
+    }
+
+    private static void skipUTF(DataInputStream in) throws IOException {
+        in.skipBytes(in.readUnsignedShort());
+    }
+
+    private static int parseInt(String s, int from, int to) {
+        if (from >= to) throw new NumberFormatException("Empty number in: " + s);
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            final int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException("Invalid number in: " + s);
+            value = value * 10 + d;
+        }
+        return value;
+    }
+}
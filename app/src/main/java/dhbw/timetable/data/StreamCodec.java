@@ -0,0 +1,85 @@
+package dhbw.timetable.data;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Optional compression of the week files of {@link OfflineStore}. Which codec writes is
+ * chosen by BuildConfig.OFFLINE_CODEC, reading detects it from the first byte of a file,
+ * so files written with another codec stay readable.
+ */
+public abstract class StreamCodec {
+
+    public static final StreamCodec IDENTITY = new StreamCodec("identity") {
+        @Override
+        public OutputStream wrap(OutputStream os) {
+            return os;
+        }
+
+        @Override
+        public InputStream wrap(InputStream is) {
+            return is;
+        }
+    };
+
+    public static final StreamCodec DEFLATE = new StreamCodec("deflate") {
+        @Override
+        public OutputStream wrap(OutputStream os) {
+            // Fast level, the files are small and mostly var ints already
+            return new DeflaterOutputStream(os, new Deflater(Deflater.BEST_SPEED));
+        }
+
+        @Override
+        public InputStream wrap(InputStream is) {
+            return new InflaterInputStream(is);
+        }
+    };
+
+    // First byte of a zlib stream with a 32K window, the snapshot magic and old text files never start with it
+    private static final int ZLIB_HEADER = 0x78;
+
+    private final String name;
+
+    private StreamCodec(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Wraps a stream to write encoded data to. Closing the returned stream finishes the encoding.
+     */
+    public abstract OutputStream wrap(OutputStream os);
+
+    public abstract InputStream wrap(InputStream is);
+
+    /**
+     * @return the codec with the given name, IDENTITY if there is none
+     */
+    public static StreamCodec forName(String name) {
+        return DEFLATE.name.equals(name) ? DEFLATE : IDENTITY;
+    }
+
+    /**
+     * Returns a stream decoding is with whatever codec it was written with
+     */
+    public static InputStream decode(InputStream is) throws IOException {
+        BufferedInputStream bis = new BufferedInputStream(is);
+        bis.mark(1);
+        final int first = bis.read();
+        bis.reset();
+        return first == ZLIB_HEADER ? DEFLATE.wrap(bis) : bis;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
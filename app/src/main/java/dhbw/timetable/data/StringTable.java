@@ -0,0 +1,242 @@
+package dhbw.timetable.data;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+
+/**
+ * Append-only table of the titles, persons and resources of {@link OfflineStore}, so that
+ * week files can refer to them by index:
+ * <pre>
+ * int    MAGIC
+ * short  VERSION
+ * for each string:
+ *   UTF  string (length prefixed)
+ *   int  CRC32 of the UTF record
+ * </pre>
+ * Strings are never removed or reordered, an index stays valid until the store is cleared.
+ * A string cut off by a crash is dropped when the table is loaded, no file refers to it
+ * yet. A string failing its checksum makes every index from there on unreliable, so the
+ * whole table is dropped and {@link #load} reports it. Tables of older versions are plain
+ * UTF strings without a header and get their checksums when they are loaded.
+ * <p>
+ * Strings are added by one writer at a time and become visible to readers once they are
+ * on disk.
+ */
+final class StringTable {
+
+    // Older tables start with the length of their first string, never that long
+    static final int MAGIC = 0x44545453; // "DTTS"
+    static final short VERSION = 1;
+    private static final int HEADER_BYTES = 6;
+
+    private final File file;
+    private final ArrayList<String> strings = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private long length = 0;
+
+    StringTable(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads all complete strings and cuts off a torn last one
+     *
+     * @return false if a string failed its checksum. The table is empty then and files
+     * referring to it can not be read anymore.
+     */
+    synchronized boolean load() throws IOException {
+        strings.clear();
+        ids.clear();
+        length = 0;
+        if (!file.exists()) return true;
+        final byte[] data = OfflineStore.readFile(file);
+        final boolean checksummed = data.length >= HEADER_BYTES && readInt(data, 0) == MAGIC;
+        int offset = 0;
+        if (checksummed) {
+            final short version = (short) (((data[4] & 0xFF) << 8) | (data[5] & 0xFF));
+            if (version != VERSION) {
+                throw new IOException("Unsupported string table version " + version);
+            }
+            offset = HEADER_BYTES;
+        }
+        final int crcBytes = checksummed ? 4 : 0;
+        CRC32 crc = new CRC32();
+        boolean intact = true;
+        while (offset + 2 <= data.length) {
+            final int utfBytes = 2 + (((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF));
+            if (offset + utfBytes + crcBytes > data.length) break;
+            if (checksummed) {
+                crc.reset();
+                crc.update(data, offset, utfBytes);
+                if (readInt(data, offset + utfBytes) != (int) crc.getValue()) {
+                    intact = false;
+                    break;
+                }
+            }
+            try {
+                add(new DataInputStream(new ByteArrayInputStream(data, offset, utfBytes)).readUTF());
+            } catch (UTFDataFormatException e) {
+                intact = false;
+                break;
+            }
+            offset += utfBytes + crcBytes;
+        }
+        if (!intact) {
+            Log.e("STORE", "String " + strings.size() + " of the table is damaged, dropping the table");
+            reset();
+            return false;
+        }
+        length = offset;
+        if (!checksummed && data.length > 0) {
+            Log.i("STORE", "Adding checksums to a table of " + strings.size() + " strings");
+            rewrite();
+        } else if (length < data.length) {
+            Log.w("STORE", "Dropping " + (data.length - length) + " bytes of a torn string");
+            truncate();
+        }
+        Log.i("STORE", "Loaded " + strings.size() + " strings");
+        return true;
+    }
+
+    synchronized int size() {
+        return strings.size();
+    }
+
+    synchronized String get(int id) {
+        return strings.get(id);
+    }
+
+    /**
+     * @return index of s or -1 if it is not in the table
+     */
+    synchronized int indexOf(String s) {
+        final Integer id = ids.get(s);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Appends the strings of the given appointments that are not in the table yet. They
+     * are on disk when this returns, so files referring to them can be written afterwards.
+     *
+     * @return number of strings added
+     */
+    int addAll(List<BackportAppointment> appointments) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        LinkedHashSet<String> added = new LinkedHashSet<>();
+        for (BackportAppointment a : appointments) {
+            addNew(a.getTitle(), added, out);
+            addNew(a.getPersons(), added, out);
+            addNew(a.getResources(), added, out);
+        }
+        if (added.isEmpty()) return 0;
+
+        out.flush();
+        final boolean empty;
+        synchronized (this) {
+            empty = length == 0;
+        }
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        if (empty) writeHeader(new DataOutputStream(header));
+        try {
+            FileOutputStream fos = new FileOutputStream(file, true);
+            try {
+                header.writeTo(fos);
+                buffer.writeTo(fos);
+                fos.flush();
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+        } catch (IOException e) {
+            // Later strings must not land behind what did not make it to disk
+            truncate();
+            throw e;
+        }
+        synchronized (this) {
+            for (String s : added) add(s);
+            length += header.size() + buffer.size();
+        }
+        return added.size();
+    }
+
+    synchronized void reset() throws IOException {
+        strings.clear();
+        ids.clear();
+        length = 0;
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+    }
+
+    private synchronized void truncate() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void addNew(String s, LinkedHashSet<String> added, DataOutputStream out) throws IOException {
+        s = s != null ? s : "";
+        if (indexOf(s) >= 0 || !added.add(s)) return;
+        writeRecord(s, out);
+    }
+
+    /**
+     * Replaces a table of an older version with the same strings and their checksums
+     */
+    private void rewrite() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        writeHeader(out);
+        for (String s : strings) {
+            writeRecord(s, out);
+        }
+        out.flush();
+        OfflineStore.writeAtomically(file, buffer);
+        length = buffer.size();
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+    }
+
+    private static void writeRecord(String s, DataOutputStream out) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        new DataOutputStream(record).writeUTF(s);
+        CRC32 crc = new CRC32();
+        crc.update(record.toByteArray(), 0, record.size());
+        record.writeTo(out);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private void add(String s) {
+        ids.put(s, strings.size());
+        strings.add(s);
+    }
+}
@@ -0,0 +1,168 @@
+package dhbw.timetable.data;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs at most one sync at a time. A sync requested while one is in flight joins it
+ * instead of downloading again, and every caller gets the shared result through its
+ * callbacks, on the main thread like the callbacks of a sync of its own. A request after
+ * the sync finished starts a new one.
+ * <p>
+ * Callers off the main thread can wait for a sync with {@link Flight#await}. Waiting on
+ * the main thread never ends, the sync finishes there.
+ */
+public final class SyncCoordinator {
+
+    interface Starter {
+        /**
+         * Starts the sync, which ends it with {@link #succeed} or {@link #fail}
+         */
+        void start(Flight flight);
+    }
+
+    /**
+     * One sync and the requests that joined it
+     */
+    public static final class Flight {
+        // Guarded by the coordinator
+        private final ArrayList<Runnable> onSuccess = new ArrayList<>();
+        private final ArrayList<ErrorCallback> onError = new ArrayList<>();
+        private final ArrayList<Runnable> after = new ArrayList<>();
+        private int requests;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean success;
+        private volatile String error;
+
+        private Flight() {
+        }
+
+        public void await() throws InterruptedException {
+            done.await();
+        }
+
+        /**
+         * @return whether the sync finished within the timeout
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return done.await(timeout, unit);
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        /**
+         * @return message of the failed sync, null if it succeeded or had nothing to report
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    private Flight inFlight;
+
+    /**
+     * Joins the sync in flight or starts one. Callbacks may be null. If the sync can not be
+     * started, it fails right away.
+     */
+    Flight request(Runnable onSuccess, ErrorCallback onError, Starter starter) {
+        final Flight flight;
+        synchronized (this) {
+            final boolean start = inFlight == null;
+            if (start) inFlight = new Flight();
+            flight = inFlight;
+            if (onSuccess != null) flight.onSuccess.add(onSuccess);
+            if (onError != null) flight.onError.add(onError);
+            flight.requests++;
+            if (!start) {
+                Log.i("TTM", "Joined the running sync, " + flight.requests + " requests share it");
+                return flight;
+            }
+            try {
+                starter.start(flight);
+                return flight;
+            } catch (Exception e) {
+                e.printStackTrace();
+                // Nobody may join a sync that never runs
+                inFlight = null;
+            }
+        }
+        fail(flight, "Unable to start the sync");
+        return flight;
+    }
+
+    /**
+     * Runs the task once the sync in flight finished, either way, or right away if there is none
+     */
+    public void afterSync(Runnable task) {
+        synchronized (this) {
+            if (inFlight != null) {
+                inFlight.after.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    void succeed(Flight flight) {
+        finish(flight, true, null);
+    }
+
+    /**
+     * @param error null if there is nothing to report, the error callbacks are not run then
+     */
+    void fail(Flight flight, String error) {
+        finish(flight, false, error);
+    }
+
+    /**
+     * @return runs the success callbacks of the flight again, for a sync that repeats it later
+     */
+    Runnable repeatSuccess(final Flight flight) {
+        return () -> {
+            final ArrayList<Runnable> callbacks;
+            synchronized (SyncCoordinator.this) {
+                callbacks = new ArrayList<>(flight.onSuccess);
+            }
+            for (Runnable callback : callbacks) runSafely(callback);
+        };
+    }
+
+    private void finish(Flight flight, boolean success, String error) {
+        final ArrayList<Runnable> callbacks = new ArrayList<>();
+        synchronized (this) {
+            // Requests from now on start a new sync
+            if (inFlight == flight) inFlight = null;
+            flight.success = success;
+            flight.error = error;
+            if (success) {
+                callbacks.addAll(flight.onSuccess);
+            } else if (error != null) {
+                for (final ErrorCallback callback : flight.onError) {
+                    callbacks.add(() -> callback.onError(error));
+                }
+            }
+            callbacks.addAll(flight.after);
+        }
+        flight.done.countDown();
+        // One screen that is gone must not keep the others from updating
+        for (Runnable callback : callbacks) runSafely(callback);
+        Log.i("TTM", "Sync finished for " + flight.requests + " requests, success=" + success);
+    }
+
+    private static void runSafely(Runnable callback) {
+        try {
+            callback.run();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
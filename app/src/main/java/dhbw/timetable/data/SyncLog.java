@@ -0,0 +1,125 @@
+package dhbw.timetable.data;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * When every week of {@link OfflineStore} was downloaded last and the {@link ContentHash}
+ * it had then, so a sync only downloads the weeks that are due:
+ * <pre>
+ * short  VERSION
+ * int    number of weeks
+ * for each week:
+ *   int   epoch day of the monday
+ *   long  download time in millis
+ *   long  content hash
+ * long   CRC32 of everything before
+ * </pre>
+ * The current and the next week are due on every sync, the following weeks after
+ * {@link #NEAR_MAX_AGE} and all others after {@link #FAR_MAX_AGE}. A missing or damaged
+ * log makes every week due once.
+ */
+final class SyncLog {
+
+    private static final short VERSION = 1;
+    static final int NEAR_WEEKS = 4;
+    static final long NEAR_MAX_AGE = 6 * 60 * 60 * 1000L;
+    static final long FAR_MAX_AGE = 24 * 60 * 60 * 1000L;
+
+    private final File file;
+    // Monday to {download time, content hash}
+    private final TreeMap<Integer, long[]> weeks = new TreeMap<>();
+
+    SyncLog(File file) {
+        this.file = file;
+    }
+
+    synchronized void load() throws IOException {
+        weeks.clear();
+        if (!file.exists()) return;
+        final byte[] data = OfflineStore.readFile(file);
+        if (data.length < 8 || OfflineStore.checksum(data, data.length - 8)
+                != new DataInputStream(new ByteArrayInputStream(data, data.length - 8, 8)).readLong()) {
+            throw new IOException("Sync log checksum mismatch");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        final short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported sync log version " + version);
+        }
+        for (int count = in.readInt(); count > 0; count--) {
+            final int monday = in.readInt();
+            weeks.put(monday, new long[]{in.readLong(), in.readLong()});
+        }
+        Log.i("STORE", "Loaded sync times of " + weeks.size() + " weeks");
+    }
+
+    synchronized void save() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeShort(VERSION);
+        out.writeInt(weeks.size());
+        for (Map.Entry<Integer, long[]> week : weeks.entrySet()) {
+            out.writeInt(week.getKey());
+            out.writeLong(week.getValue()[0]);
+            out.writeLong(week.getValue()[1]);
+        }
+        out.flush();
+        out.writeLong(OfflineStore.checksum(buffer.toByteArray(), buffer.size()));
+        out.flush();
+        OfflineStore.writeAtomically(file, buffer);
+    }
+
+    /**
+     * Records a download of the week
+     *
+     * @return whether its content differs from the last download
+     */
+    synchronized boolean record(int monday, long hash, long now) {
+        final long[] previous = weeks.put(monday, new long[]{now, hash});
+        return previous == null || previous[1] != hash;
+    }
+
+    /**
+     * @return mondays from first to last (inclusive) that are due for download at now
+     */
+    synchronized List<Integer> getDueWeeks(int first, int last, int thisMonday, long now) {
+        ArrayList<Integer> due = new ArrayList<>();
+        for (int monday = first; monday <= last; monday += 7) {
+            final long[] week = weeks.get(monday);
+            if (week == null || week[0] > now || now - week[0] >= maxAge(monday, thisMonday)) {
+                due.add(monday);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Forgets the weeks outside of first to last (inclusive)
+     */
+    synchronized void retain(int first, int last) {
+        weeks.headMap(first).clear();
+        weeks.tailMap(last, false).clear();
+    }
+
+    synchronized void clear() {
+        weeks.clear();
+    }
+
+    static long maxAge(int monday, int thisMonday) {
+        final int ahead = (monday - thisMonday) / 7;
+        if (ahead == 0 || ahead == 1) return 0;
+        if (ahead > 1 && ahead <= NEAR_WEEKS) return NEAR_MAX_AGE;
+        return FAR_MAX_AGE;
+    }
+}
@@ -17,24 +17,25 @@ import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.util.Log;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketAddress;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import dhbw.timetable.ActivityHelper;
+import dhbw.timetable.BuildConfig;
 import dhbw.timetable.R;
 import dhbw.timetable.dialogs.ErrorDialog;
 import dhbw.timetable.navfragments.notifications.alarm.AlarmSupervisor;
@@ -51,11 +52,22 @@ import static dhbw.timetable.ActivityHelper.getActivity;
 public final class TimetableManager {
 
     private final static TimetableManager INSTANCE = new TimetableManager();
-
-    private final Map<TimelessDate, ArrayList<BackportAppointment>> globalTimetables = new HashMap<>();
-    private final Map<TimelessDate, ArrayList<BackportAppointment>> localTimetables = new HashMap<>();
-    private boolean busy = false;
+    // Downloads of week ranges, at most FETCH_PARALLELISM at once
+    private static final ExecutorService FETCHER = Executors.newFixedThreadPool(BuildConfig.FETCH_PARALLELISM);
+
+    // Replaced as a whole, never modified, so it can be read from any thread without locking
+    private final AtomicReference<TimetableState> globals = new AtomicReference<>(TimetableState.EMPTY);
+    // Mondays of the weeks loaded outside the sync range
+    private final Set<Integer> localWeeks = new HashSet<>();
+    // Canonical appointments and strings of the globals
+    private final AppointmentPool pool = new AppointmentPool();
+    // One sync at a time, shared by everyone who asks for one meanwhile
+    private final SyncCoordinator syncs = new SyncCoordinator();
     private AsyncTask<Void, Void, Void> currentTask;
+    private OfflineCache offlineCache;
+    // Timetable the globals were loaded for
+    private String globalsTimetable;
+    private boolean refetching = false;
 
     private TimetableManager() {
     }
@@ -64,7 +76,7 @@ public final class TimetableManager {
         return INSTANCE;
     }
 
-    private static String getActiveTimetable(Application a) {
+    private static String getActiveTimetable(Context a) {
         SharedPreferences sharedPref = a.getSharedPreferences(
                 a.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
         for (String key : sharedPref.getAll().keySet()) {
@@ -76,64 +88,37 @@ public final class TimetableManager {
         return "undefined";
     }
 
-    private boolean areAppointmentsEqual(ArrayList<BackportAppointment> l1, ArrayList<BackportAppointment> l2) {
-        if (l1.size() != l2.size()) return false;
-        BackportAppointment a1, a2;
-        for (int i = 0; i < l1.size(); i++) {
-            a1 = l1.get(i);
-            a2 = l2.get(i);
-            if (!a1.toString().equals(a2.toString())) return false;
-        }
-        return true;
-    }
-
-    private boolean notificationNeeded(Application application, SharedPreferences sharedPref) {
-        if (!secureFile(application)) {
+    /**
+     * @return changes of the offline weeks in the current state, empty if the user is not
+     * notified of changes or there are none
+     */
+    private List<WeekDiff.Change> findChanges(Application application, SharedPreferences sharedPref) {
+        if (getOfflineStore(application).isEmpty()) {
             Log.i("TTM", "No offline globals to compare.");
-            return false;
+            return Collections.emptyList();
         }
         String changeCrit = sharedPref.getString("onChangeCrit", "None");
         Log.i("TTM", "Searching for changes. Criteria: " + changeCrit);
         Map<TimelessDate, ArrayList<BackportAppointment>> offlineTimetables;
         switch (changeCrit) {
             case "None":
-                return false;
+                return Collections.emptyList();
             case "Every change":
                 offlineTimetables = loadOfflineGlobalsIntoList(application);
-
-                for (TimelessDate date : offlineTimetables.keySet()) {
-                    // Can only compare if available
-                    if (globalTimetables.containsKey(date)) {
-                        Log.d("COMP", "Comparing week " + DateUtilities.GERMAN_STD_SDATEFORMAT.format(date.getTime()));
-                        if (!areAppointmentsEqual(offlineTimetables.get(date),
-                                globalTimetables.get(date))) {
-                            return true;
-                        }
-                    }
-                }
-                return false;
+                // Weeks with equal content hashes cost one pass
+                return WeekDiff.compare(offlineTimetables, getGlobals());
             case "One week ahead":
                 TimelessDate thisWeek = new TimelessDate();
-                TimelessDate nextWeek = new TimelessDate();
+                DateUtilities.Backport.Normalize(thisWeek);
+                TimelessDate nextWeek = (TimelessDate) thisWeek.clone();
                 DateUtilities.Backport.NextWeek(nextWeek);
+                DateUtilities.Backport.Normalize(nextWeek);
 
-                offlineTimetables = loadOfflineGlobalsIntoList(application);
-
-                if (offlineTimetables.containsKey(thisWeek)) {
-                    if (!areAppointmentsEqual(offlineTimetables.get(thisWeek),
-                            globalTimetables.get(thisWeek))) {
-                        return true;
-                    }
-                }
-                if (offlineTimetables.containsKey(nextWeek)) {
-                    if (!areAppointmentsEqual(offlineTimetables.get(nextWeek), globalTimetables.get(nextWeek))) {
-                        return true;
-                    }
-                }
-                return false;
+                offlineTimetables = loadOfflineGlobalsIntoList(application, thisWeek, nextWeek);
+                return WeekDiff.compare(offlineTimetables, getGlobals());
         }
         Log.e("TTM", "Error! Wrong change crit: " + changeCrit);
-        return false;
+        return Collections.emptyList();
     }
 
     private static Uri getTone(SharedPreferences sharedPreferences) {
@@ -152,8 +137,12 @@ public final class TimetableManager {
         SharedPreferences sharedPref = application.getSharedPreferences(
                 application.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
         Uri sound = getTone(sharedPref);
-        if (notificationNeeded(application, sharedPref)) {
-            Log.i("TTM", "Changes found. Would fire!");
+        final List<WeekDiff.Change> changes = findChanges(application, sharedPref);
+        if (!changes.isEmpty()) {
+            for (WeekDiff.Change change : changes) {
+                Log.i("TTM", "Changed: " + change);
+            }
+            Log.i("TTM", changes.size() + " changes found. Would fire!");
             switch (sharedPref.getString("onChangeForm", "Banner")) {
                 case "None":
                     if (sound != null) {
@@ -162,7 +151,7 @@ public final class TimetableManager {
                     }
                     break;
                 case "Banner":
-                    fireBanner(sound);
+                    fireBanner(sound, describe(changes));
                     break;
             }
 
@@ -171,7 +160,28 @@ public final class TimetableManager {
         }
     }
 
-    private static void fireBanner(Uri sound) {
+    /**
+     * @return text of the change notification, naming the lecture if only one changed
+     */
+    private static String describe(List<WeekDiff.Change> changes) {
+        if (changes.size() > 1) {
+            return changes.size() + " lectures of your timetable changed!";
+        }
+        final WeekDiff.Change change = changes.get(0);
+        final BackportAppointment a = change.getNow() != null ? change.getNow() : change.getOld();
+        switch (change.getType()) {
+            case WeekDiff.ADDED:
+                return "New lecture: " + a.getTitle();
+            case WeekDiff.REMOVED:
+                return "Lecture cancelled: " + a.getTitle();
+            case WeekDiff.ROOM_CHANGED:
+                return "Room changed: " + a.getTitle() + " in " + a.getResources();
+            default:
+                return "Lecture rescheduled: " + a.getTitle();
+        }
+    }
+
+    private static void fireBanner(Uri sound, String text) {
         final Activity curr = getActivity();
         if (curr != null) {
             NotificationCompat.Builder mBuilder =
@@ -181,7 +191,7 @@ public final class TimetableManager {
                             .setSound(sound)
                             .setLargeIcon(BitmapFactory.decodeResource(curr.getResources(), R.mipmap.ic_launcher_large))
                             .setContentTitle(curr.getResources().getString(R.string.app_name))
-                            .setContentText("Your timetable changed!");
+                            .setContentText(text);
 
             if (sound != null) {
                 mBuilder.setSound(sound);
@@ -211,27 +221,45 @@ public final class TimetableManager {
         }
     }
 
-    private static boolean secureFile(Application application) {
-        try {
-            FileInputStream fis = application.openFileInput(application.getResources().getString(R.string.TIMETABLES_FILE));
-            fis.close();
-            return true;
-        } catch (IOException e) {
-            return false;
+    /**
+     * Returns the offline store of the active timetable. After the user switched to another
+     * timetable the globals of the previous one are dropped, its offline weeks are kept.
+     */
+    public synchronized OfflineStore getOfflineStore(Context context) {
+        final String timetable = getActiveTimetable(context);
+        if (offlineCache == null) {
+            offlineCache = OfflineCache.open(context.getApplicationContext(), timetable);
+        }
+        if (!timetable.equals(globalsTimetable)) {
+            if (globalsTimetable != null) {
+                Log.i("TTM", "Active timetable changed, dropping globals");
+                pool.retain(globals.getAndSet(TimetableState.EMPTY), TimetableState.EMPTY);
+                localWeeks.clear();
+            }
+            globalsTimetable = timetable;
         }
+        return offlineCache.get(timetable);
     }
 
-    @Deprecated
-    public boolean isBusy() {
-        return busy;
+    /**
+     * Deletes the offline weeks of a timetable the user removed
+     */
+    public synchronized void removeOfflineTimetable(Context context, String timetable) {
+        if (offlineCache == null) {
+            offlineCache = OfflineCache.open(context.getApplicationContext(), getActiveTimetable(context));
+        }
+        offlineCache.remove(timetable);
     }
 
+    /**
+     * @return the current weeks, unmodifiable. They stay consistent while a download replaces them.
+     */
     public Map<TimelessDate, ArrayList<BackportAppointment>> getGlobals() {
-        return globalTimetables;
+        return globals.get().getWeeks();
     }
 
-    public AsyncTask<Void, Void, Void> getTask() {
-        return currentTask;
+    public TimetableState getState() {
+        return globals.get();
     }
 
     public boolean isRunning() {
@@ -239,42 +267,122 @@ public final class TimetableManager {
                 || currentTask.getStatus() == AsyncTask.Status.PENDING);
     }
 
-    public ArrayList<BackportAppointment> getGlobalsAsList() {
-        ArrayList<BackportAppointment> weeks = new ArrayList<>();
-        for (ArrayList<BackportAppointment> c : globalTimetables.values()) {
-            weeks.addAll(c);
-        }
-        return weeks;
+    /**
+     * @return the globals indexed by day, for day and week queries of the views
+     */
+    public AppointmentIndex getGlobalsIndex() {
+        return globals.get().getIndex();
     }
 
-    public LinkedHashSet<BackportAppointment> getGlobalsAsSet() {
-        LinkedHashSet<BackportAppointment> weeks = new LinkedHashSet<>();
-        for (ArrayList<BackportAppointment> week : globalTimetables.values()) weeks.addAll(week);
-        return weeks;
+    /**
+     * @return all global appointments, unmodifiable and shared until the globals change
+     */
+    public List<BackportAppointment> getGlobalsAsList() {
+        return globals.get().getList();
     }
 
-    private ArrayList<BackportAppointment> getLocalsAsList() {
-        ArrayList<BackportAppointment> weeks = new ArrayList<>();
-        for (ArrayList<BackportAppointment> week : localTimetables.values()) weeks.addAll(week);
-        return weeks;
+    /**
+     * @return all global appointments, unmodifiable and shared until the globals change
+     */
+    public Set<BackportAppointment> getGlobalsAsSet() {
+        return globals.get().getSet();
+    }
+
+    /**
+     * @return share of view requests served without rebuilding, 0 if there were none
+     */
+    public float getViewCacheHitRate() {
+        return TimetableState.getViewCacheHitRate();
+    }
+
+    /**
+     * Publishes the globals with the given weeks added or replaced. Retries if another
+     * thread published meanwhile, so that no change is lost.
+     */
+    private void mergeGlobals(Map<TimelessDate, ArrayList<BackportAppointment>> changed) {
+        pool.canonicalize(changed);
+        TimetableState current, next;
+        do {
+            current = globals.get();
+            next = current.with(changed);
+        } while (!globals.compareAndSet(current, next));
+        pool.retain(current, next);
+    }
+
+    /**
+     * Publishes the given weeks as the new globals
+     */
+    private void replaceGlobals(Map<TimelessDate, ArrayList<BackportAppointment>> weeks) {
+        final int reused = pool.canonicalize(weeks);
+        final TimetableState next = TimetableState.of(weeks);
+        pool.retain(globals.getAndSet(next), next);
+        Log.d("TTM", "Reused " + reused + " unchanged appointments, pool holds " + pool.size());
+    }
+
+    /**
+     * Publishes the globals with the given weeks added or replaced and without the weeks
+     * outside of first to last (inclusive)
+     */
+    private void mergeGlobals(Map<TimelessDate, ArrayList<BackportAppointment>> changed, int first, int last) {
+        pool.canonicalize(changed);
+        TimetableState current, next;
+        do {
+            current = globals.get();
+            ArrayList<Integer> outside = new ArrayList<>();
+            for (int monday : current.getMondays()) {
+                if (monday < first || monday > last) outside.add(monday);
+            }
+            next = current.with(changed).without(outside);
+        } while (!globals.compareAndSet(current, next));
+        pool.retain(current, next);
+    }
+
+    private void dropGlobals(Collection<Integer> weeks) {
+        TimetableState current, next;
+        do {
+            current = globals.get();
+            next = current.without(weeks);
+        } while (!globals.compareAndSet(current, next));
+        pool.retain(current, next);
     }
 
     /**
      * Downloads timetable contents from only on day into existing GLOBAL_TIMETABLES and writes
-     * complete global data to file system
+     * this week to file system. If the week was visited before, the offline copy is shown first
+     * and onSuccess only runs again if the download changed it.
      */
     public void reorderSpecialGlobals(final Application application, final Runnable onSuccess, final ErrorCallback errorCallback, final TimelessDate date) {
-        TimetableManager.this.busy = true;
         // DO NOT CLEAR GLOBALS ONLY LOCALS
-        globalTimetables.keySet().removeAll(localTimetables.keySet());
-        localTimetables.clear();
+        dropGlobals(localWeeks);
+        localWeeks.clear();
+
+        // Same start and end date
+        final TimelessDate startDate = (TimelessDate) date.clone();
+        DateUtilities.Backport.Normalize(startDate);
+
         currentTask = new AsyncTask<Void, Void, Void>() {
-            boolean success = false;
+            boolean success = false, cached = false;
             String errMSG = "";
+            OfflineStore store;
+            Map<TimelessDate, ArrayList<BackportAppointment>> offline = new HashMap<>();
+            Map<TimelessDate, ArrayList<BackportAppointment>> fetched = new HashMap<>();
 
             @Override
             protected Void doInBackground(Void... noArgs) {
-                if (!isOnline()) {
+                // The offline copy is shown while the week downloads
+                store = getOfflineStore(application);
+                if (store.hasWeek(EpochDays.of(startDate))) {
+                    try {
+                        store.read(EpochDays.of(startDate), new SnapshotReader.Collector(offline));
+                        cached = true;
+                        publishProgress();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        Log.e("TTM", "Unable to read offline week");
+                    }
+                }
+
+                if (!ConnectivityMonitor.getInstance(application).isOnline()) {
                     errMSG = "No internet. Maybe there is a problem with your internet or with the rapla server.";
                     return null;
                 }
@@ -287,10 +395,6 @@ public final class TimetableManager {
                 }
                 Log.i("TTM", "Loading SPECIAL online globals for " + timetable);
 
-                // Same start and end date
-                TimelessDate startDate = (TimelessDate) date.clone();
-                DateUtilities.Backport.Normalize(startDate);
-
                 TimelessDate endDate = (TimelessDate) startDate.clone();
 
                 Log.i("TTM", "REORDER algorithm for " + DateUtilities.GERMAN_STD_SDATEFORMAT.format(startDate.getTime()));
@@ -300,11 +404,10 @@ public final class TimetableManager {
                     Map<TimelessDate, ArrayList<BackportAppointment>> temp2 = DataImporter.Backport.ImportWeekRange(startDate, endDate, timetable);
 
                     for (GregorianCalendar cal : temp2.keySet()) {
-                        localTimetables.put(new TimelessDate(cal), temp2.get(cal));
+                        fetched.put(new TimelessDate(cal), temp2.get(cal));
                     }
 
                     success = true;
-                    globalTimetables.putAll(localTimetables);
                 } catch (Exception e) {
                     StringWriter sw = new StringWriter();
                     PrintWriter pw = new PrintWriter(sw);
@@ -317,47 +420,81 @@ public final class TimetableManager {
                 return null;
             }
 
+            @Override
+            protected void onProgressUpdate(Void... noProgress) {
+                localWeeks.add(EpochDays.of(startDate));
+                mergeGlobals(offline);
+                Log.i("TTM", "Loaded SPECIAL offline globals. Updating UI...");
+                onSuccess.run();
+            }
+
             @Override
             protected void onPostExecute(Void result) {
                 if (!success) {
                     Log.w("TTM", "Unable to receive online data");
-                    errorCallback.onError(errMSG);
-                    TimetableManager.this.busy = false;
+                    if (!cached) {
+                        errorCallback.onError(errMSG);
+                    }
                     return;
                 }
 
+                // Compared with the offline copy shown before
+                int changed = 0;
+                final TimetableState before = getState();
+                for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : fetched.entrySet()) {
+                    localWeeks.add(EpochDays.of(week.getKey()));
+                    if (before.getWeekHash(EpochDays.of(week.getKey())) != ContentHash.of(week.getValue())) changed++;
+                }
+                mergeGlobals(fetched);
+                store.saveAsync(fetched, errMSG -> Log.e("TTM", "Unable to save SPECIAL week offline: " + errMSG));
+
                 Log.i("TTM", "Successfully REORDERED SPECIAL global timetables");
                 Log.d("TTM", TimetableManager.getInstance().serialRepresentation());
-                // Update UI
-                Log.i("TTM", "Updating UI...");
-                onSuccess.run();
-                Log.i("TTM", "Updated UI!");
-
-                TimetableManager.this.busy = false;
+                if (!cached || changed > 0) {
+                    // Update UI
+                    Log.i("TTM", "Updating UI...");
+                    onSuccess.run();
+                    Log.i("TTM", "Updated UI!");
+                }
             }
         };
         currentTask.execute();
     }
 
     /**
-     * Downloads timetable contents into cleared GLOBAL_TIMETABLES and writes data to file system
+     * Brings GLOBAL_TIMETABLES up to date for the sync range and writes downloaded weeks to
+     * file system. Only the weeks due according to the {@link SyncLog} are downloaded, the
+     * others are kept from memory or read from the offline store. The previous globals
+     * stay visible until the result is merged into them.
+     * <p>
+     * A sync already in flight is joined instead of started again, the callbacks then get its
+     * result. Either may be null.
+     *
+     * @return the sync the callbacks are attached to, to wait for it off the main thread
      */
-    public void updateGlobals(final Application application, final Runnable updater, final ErrorCallback errorCallback) {
-        TimetableManager.this.busy = true;
-        globalTimetables.clear();
-        localTimetables.clear();
+    public SyncCoordinator.Flight updateGlobals(final Application application, final Runnable updater, final ErrorCallback errorCallback) {
+        return syncs.request(updater, errorCallback, flight -> startUpdate(application, flight));
+    }
+
+    /**
+     * Runs the task once the sync in flight finished, or right away if there is none
+     */
+    public void afterSync(Runnable task) {
+        syncs.afterSync(task);
+    }
+
+    private void startUpdate(final Application application, final SyncCoordinator.Flight flight) {
+        localWeeks.clear();
         currentTask = new AsyncTask<Void, Void, Void>() {
             boolean success = false, timetablePresent = true;
             String errMSG;
+            Map<TimelessDate, ArrayList<BackportAppointment>> fetched = new HashMap<>();
+            OfflineStore store;
+            int first, last;
+            long now;
 
             @Override
             protected Void doInBackground(Void... noArgs) {
-                if (!isOnline()) {
-                    errMSG = "No internet. Maybe there is a problem with your internet or with the rapla server.";
-                    return null;
-                }
-
-
                 // Get the first timetable
                 String timetable = getActiveTimetable(application);
                 if (timetable.equals("undefined")) {
@@ -378,15 +515,52 @@ public final class TimetableManager {
                 DateUtilities.Backport.AddDays(endDate, Integer.parseInt(prefs.getString("sync_range_future", "1")) * 7);
                 DateUtilities.Backport.Normalize(endDate);
 
-                Log.i("TTM", "Running algorithm from " + DateUtilities.GERMAN_STD_SDATEFORMAT.format(startDate.getTime()) + " to " + DateUtilities.GERMAN_STD_SDATEFORMAT.format(endDate.getTime()));
+                first = EpochDays.of(startDate);
+                last = EpochDays.of(endDate);
+                now = System.currentTimeMillis();
+                store = getOfflineStore(application);
+                final TreeSet<Integer> due = new TreeSet<>(store.getSyncLog().getDueWeeks(first, last,
+                        EpochDays.monday(EpochDays.of(new TimelessDate())), now));
+
+                // Weeks not due come from memory or the offline store, damaged ones are due
+                Map<TimelessDate, ArrayList<BackportAppointment>> loaded = new HashMap<>();
+                final TimetableState current = getState();
+                final Set<Integer> stale = store.getStaleWeeks();
+                for (int monday = first; monday <= last; monday += 7) {
+                    if (due.contains(monday) || current.hasWeek(monday)) continue;
+                    if (!stale.contains(monday) && store.hasWeek(monday)) {
+                        try {
+                            Map<TimelessDate, ArrayList<BackportAppointment>> week = new HashMap<>();
+                            store.read(monday, new SnapshotReader.Collector(week));
+                            if (store.hasWeek(monday)) {
+                                loaded.put(WeekFetcher.weekOf(monday), week.isEmpty()
+                                        ? new ArrayList<BackportAppointment>() : week.values().iterator().next());
+                                continue;
+                            }
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    due.add(monday);
+                }
+                Log.i("TTM", "Sync range has " + ((last - first) / 7 + 1) + " weeks, " + due.size()
+                        + " due, " + loaded.size() + " read offline");
 
-                // Run download algorithm for ArrayList LOCAL_TIMETABLES
-                try {
-                    Map<TimelessDate, ArrayList<BackportAppointment>> temp2 = DataImporter.Backport.ImportWeekRange(startDate, endDate, timetable);
+                if (!due.isEmpty() && !ConnectivityMonitor.getInstance(application).isOnline()) {
+                    errMSG = "No internet. The sync runs again once a network is available.";
+                    queueSync(application, syncs.repeatSuccess(flight));
+                    return null;
+                }
 
-                    for (GregorianCalendar cal : temp2.keySet()) {
-                        globalTimetables.put(new TimelessDate(cal), temp2.get(cal));
-                    }
+                // Run download algorithm for the due weeks, in parallel ranges if allowed
+                try {
+                    Log.i("TTM", "Running algorithm for " + due.size() + " weeks in up to " + BuildConfig.FETCH_PARALLELISM + " requests");
+                    fetched = new WeekFetcher((from, to) -> DataImporter.Backport.ImportWeekRange(from, to, timetable), FETCHER,
+                            BuildConfig.FETCH_PARALLELISM).fetch(due);
+                    Map<TimelessDate, ArrayList<BackportAppointment>> changes = new HashMap<>(loaded);
+                    changes.putAll(fetched);
+                    mergeGlobals(changes, first, last);
+                    Log.i("TTM", "Downloaded " + fetched.size() + " weeks");
 
                     success = true;
                 } catch (Exception e) {
@@ -403,94 +577,90 @@ public final class TimetableManager {
             @Override
             protected void onPostExecute(Void result) {
                 if (!success) {
-                    TimetableManager.this.busy = false;
                     Log.w("TTM", "Unable to receive online data");
                     // If user is on board
-                    if (timetablePresent) {
-                        errorCallback.onError(errMSG);
-                    }
+                    syncs.fail(flight, timetablePresent ? errMSG : null);
                     return;
                 }
 
-                Log.i("TTM", "Successfully updated global timetables [" + globalTimetables.size() + "][" + getGlobalsAsList().size() + "]:");
+                Log.i("TTM", "Successfully updated global timetables [" + getGlobals().size() + "][" + getGlobalsAsList().size() + "], view cache hit rate " + getViewCacheHitRate() + ":");
                 Log.d("TTM", serialRepresentation());
                 // Update UI
                 Log.i("TTM", "Updating UI...");
-                updater.run();
+                syncs.succeed(flight);
                 Log.i("TTM", "Updated UI!");
 
                 AlarmSupervisor.getInstance().rescheduleAllAlarms(application.getApplicationContext());
 
                 handleChangePolicies(application);
 
-                // Update offline globals
-                try {
-                    FileOutputStream outputStream = application.openFileOutput(
-                            application.getResources().getString(R.string.TIMETABLES_FILE), Context.MODE_PRIVATE);
-                    outputStream.write(serialRepresentation().getBytes());
-                    outputStream.close();
-                } catch (IOException e) {
-                    StringWriter sw = new StringWriter();
-                    PrintWriter pw = new PrintWriter(sw);
-                    e.printStackTrace(pw);
-
-                    errMSG = e.getMessage() + "\n" + sw.toString();
-                    e.printStackTrace();
-
+                // Update offline globals in the background, only downloaded weeks can be new.
+                // The sync log only skips them once they are on disk.
+                final Map<TimelessDate, ArrayList<BackportAppointment>> downloaded = fetched;
+                store.saveAsync(downloaded, () -> recordSync(store.getSyncLog(), downloaded, now, first, last), errMSG -> {
                     // let user know about this error
                     Activity activity = ActivityHelper.getActivity();
                     if (activity != null) {
                         ErrorDialog.newInstance("ERROR", "Unable to update offline data", errMSG)
                                 .show(activity.getFragmentManager(), "OFFERROR");
                     }
-                }
-
-                TimetableManager.this.busy = false;
+                });
             }
         };
         currentTask.execute();
     }
 
     /**
-     * Loads the last downloaded timetables into GLOBAL_TIMETABLES
+     * Records the download of the weeks and forgets weeks outside of the sync range. Runs
+     * on the background writer after the weeks were saved.
+     */
+    private static void recordSync(SyncLog syncLog, Map<TimelessDate, ArrayList<BackportAppointment>> weeks,
+                                   long now, int first, int last) {
+        int changed = 0;
+        for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : weeks.entrySet()) {
+            if (syncLog.record(EpochDays.of(week.getKey()), ContentHash.of(week.getValue()), now)) {
+                changed++;
+            }
+        }
+        syncLog.retain(first, last);
+        try {
+            syncLog.save();
+        } catch (IOException e) {
+            Log.w("TTM", "Unable to save sync log: " + e);
+        }
+        Log.i("TTM", "Recorded " + weeks.size() + " downloaded weeks, " + changed + " changed");
+    }
+
+    /**
+     * Loads the last downloaded timetables into GLOBAL_TIMETABLES. If mondays are given,
+     * only those weeks are read and only if they are not in memory yet.
      */
-    public void loadOfflineGlobals(Application application, Runnable updater) {
+    public void loadOfflineGlobals(Application application, Runnable updater, TimelessDate... weeks) {
         // If no OfflineGlobals were found, try to load them from online
-        if (!secureFile(application)) {
+        final OfflineStore store = getOfflineStore(application);
+        if (store.isEmpty()) {
             Log.i("TTM", "No offline globals were found, checking online.");
-            if (!TimetableManager.getInstance().isBusy()) {
-                updateGlobals(application, updater, string -> {
-                });
-            } else {
-                Log.i("ASYNC", "Tried to sync while manager was busy");
-            }
+            updateGlobals(application, updater, null);
             return;
         }
-        Log.i("TTM", "Loading offline globals...");
-        globalTimetables.clear();
         try {
-            FileInputStream fis = application.openFileInput(
-                    application.getResources().getString(R.string.TIMETABLES_FILE));
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(fis));
-
-            String line;
-            BackportAppointment a;
-            while ((line = bufferedReader.readLine()) != null) {
-                if (line.isEmpty()) continue;
-
-                String[] aData = line.split("\t");
-                String[] date = aData[0].split("\\.");
-                TimelessDate g = new TimelessDate();
-                g.set(Calendar.DAY_OF_MONTH, Integer.parseInt(date[0]));
-                g.set(Calendar.MONTH, Integer.parseInt(date[1]) - 1);
-                g.set(Calendar.YEAR, Integer.parseInt(date[2]));
-
-                a = new BackportAppointment(aData[1], g, aData[2], aData[3], aData[4]);
-
-                TimetableManager.getInstance().insertAppointment(globalTimetables, new TimelessDate(g), a);
+            Map<TimelessDate, ArrayList<BackportAppointment>> loaded = new HashMap<>();
+            if (weeks.length > 0) {
+                Log.i("TTM", "Loading " + weeks.length + " offline weeks...");
+                SnapshotReader.Collector collector = new SnapshotReader.Collector(loaded);
+                final TimetableState current = getState();
+                for (TimelessDate week : weeks) {
+                    if (!current.hasWeek(EpochDays.of(week))) {
+                        store.read(EpochDays.of(week), collector);
+                    }
+                }
+                mergeGlobals(loaded);
+            } else {
+                Log.i("TTM", "Loading offline globals...");
+                store.read(new SnapshotReader.Collector(loaded));
+                replaceGlobals(loaded);
             }
             Log.i("TTM", "Success!");
-            bufferedReader.close();
         } catch (Exception e) {
             e.printStackTrace();
 
@@ -499,70 +669,103 @@ public final class TimetableManager {
         Log.i("TTM", "Updating UI...");
         updater.run();
         Log.i("TTM", "Done");
+        refetchStaleWeeks(application, updater);
     }
 
-    private boolean isOnline() {
-        try {
-            int timeoutMs = 1500;
-            Socket sock = new Socket();
-            SocketAddress sockaddr = new InetSocketAddress("8.8.8.8", 53);
-
-            sock.connect(sockaddr, timeoutMs);
-            sock.close();
+    /**
+     * Downloads only the offline weeks that turned out to be damaged and saves them again.
+     * Does nothing while another download runs, a full update replaces them anyway.
+     *
+     * @param updater run if refetched weeks were added to GLOBAL_TIMETABLES, may be null
+     */
+    private void refetchStaleWeeks(final Application application, final Runnable updater) {
+        final OfflineStore store = getOfflineStore(application);
+        final Set<Integer> stale = store.getStaleWeeks();
+        if (stale.isEmpty() || refetching || isRunning()) return;
+        refetching = true;
+        Log.i("TTM", "Refetching " + stale.size() + " damaged offline weeks");
+        new AsyncTask<Void, Void, Void>() {
+            Map<TimelessDate, ArrayList<BackportAppointment>> fetched = new HashMap<>();
 
-            return true;
-        } catch (IOException e) {
-            return false;
-        }
-    }
+            @Override
+            protected Void doInBackground(Void... noArgs) {
+                if (!ConnectivityMonitor.getInstance(application).isOnline()) {
+                    Log.w("TTM", "No internet to refetch damaged weeks");
+                    ConnectivityMonitor.getInstance(application).runWhenOnline("refetch",
+                            () -> refetchStaleWeeks(application, null));
+                    return null;
+                }
+                String timetable = getActiveTimetable(application);
+                if (timetable.equals("undefined")) {
+                    Log.w("TTM", "There is currently no timetable specified.");
+                    return null;
+                }
+                try {
+                    fetched = new WeekFetcher((from, to) -> DataImporter.Backport.ImportWeekRange(from, to, timetable), FETCHER,
+                            BuildConfig.FETCH_PARALLELISM).fetch(stale);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    Log.e("TTM", "Unable to refetch damaged weeks");
+                }
+                return null;
+            }
 
-    Map<TimelessDate, ArrayList<BackportAppointment>> getLocals() {
-        return localTimetables;
+            @Override
+            protected void onPostExecute(Void result) {
+                refetching = false;
+                if (fetched.isEmpty()) return;
+                store.saveAsync(fetched, errMSG -> Log.e("TTM", "Unable to save refetched weeks: " + errMSG));
+                // A download started meanwhile fills the globals itself
+                if (!isRunning()) {
+                    mergeGlobals(fetched);
+                    if (updater != null) updater.run();
+                }
+                Log.i("TTM", "Refetched " + fetched.size() + " damaged offline weeks");
+            }
+        }.execute();
     }
 
-    public void insertAppointment(Map<TimelessDate, ArrayList<BackportAppointment>> globals, GregorianCalendar date, BackportAppointment a) {
-        TimelessDate week = new TimelessDate(date);
-        DateUtilities.Backport.Normalize(week);
-
-        if (!globals.containsKey(week)) globals.put(week, new ArrayList<>());
-        globals.get(week).add(a);
+    /**
+     * Runs a sync that was skipped for lack of network once one is available, or joins the
+     * one running then. The screens that asked for it may be gone by then, so the updater
+     * must not take the app down.
+     */
+    private void queueSync(final Application application, final Runnable updater) {
+        ConnectivityMonitor.getInstance(application).runWhenOnline("sync", () ->
+                updateGlobals(application, updater, errMSG -> Log.e("TTM", "Queued sync FAILED: " + errMSG)));
     }
 
+    /**
+     * Reads the offline timetables, restricted to the given mondays if there are any
+     */
     private Map<TimelessDate, ArrayList<BackportAppointment>> loadOfflineGlobalsIntoList(
-            Application application) {
+            Application application, TimelessDate... weeks) {
         Log.i("TTM", "Accessing offline globals...");
         Map<TimelessDate, ArrayList<BackportAppointment>> offlineAppointments = new HashMap<>();
+        String errMSG = null;
         try {
-            FileInputStream fis = application.openFileInput(
-                    application.getResources().getString(R.string.TIMETABLES_FILE));
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(fis));
-
-            String line;
-            BackportAppointment a;
-            while ((line = bufferedReader.readLine()) != null) {
-                if (line.isEmpty()) continue;
-
-                String[] aData = line.split("\t");
-                String[] date = aData[0].split("\\.");
-                TimelessDate g = new TimelessDate();
-                g.set(Calendar.DAY_OF_MONTH, Integer.parseInt(date[0]));
-                g.set(Calendar.MONTH, Integer.parseInt(date[1]) - 1);
-                g.set(Calendar.YEAR, Integer.parseInt(date[2]));
-
-                a = new BackportAppointment(aData[1], g, aData[2], aData[3], aData[4]);
-
-                TimetableManager.getInstance().insertAppointment(offlineAppointments, (TimelessDate) g.clone(), a);
+            OfflineStore store = getOfflineStore(application);
+            SnapshotReader.Collector collector = new SnapshotReader.Collector(offlineAppointments, weeks);
+            if (weeks.length > 0) {
+                for (TimelessDate week : weeks) store.read(EpochDays.of(week), collector);
+            } else {
+                store.read(collector);
+            }
+            if (collector.getErrors() > 0) {
+                errMSG = collector.getErrors() + " records could not be read.";
             }
-            Log.i("TTM", "Success!");
-            bufferedReader.close();
         } catch (Exception e) {
             StringWriter sw = new StringWriter();
             PrintWriter pw = new PrintWriter(sw);
             e.printStackTrace(pw);
 
-            String errMSG = e.getMessage() + "\n" + sw.toString();
+            errMSG = e.getMessage() + "\n" + sw.toString();
             e.printStackTrace();
+        }
+
+        refetchStaleWeeks(application, null);
 
+        if (errMSG != null) {
             // let user know about this error
             Activity activity = ActivityHelper.getActivity();
             if (activity != null) {
@@ -570,14 +773,17 @@ public final class TimetableManager {
                         .show(activity.getFragmentManager(), "OFFLOADERROR");
             }
             Log.e("TTM", "FAILED!");
+        } else {
+            Log.i("TTM", "Success!");
         }
         return offlineAppointments;
     }
 
     private String serialRepresentation() {
+        final TimetableState state = getState();
         StringBuilder sb = new StringBuilder();
-        for (TimelessDate week : globalTimetables.keySet()) {
-            for (BackportAppointment a : globalTimetables.get(week)) {
+        for (int monday : state.getMondays()) {
+            for (BackportAppointment a : state.getWeek(monday)) {
                 sb.append(a.toString()).append("\n");
             }
             sb.append("\n");
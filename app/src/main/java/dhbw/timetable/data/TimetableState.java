@@ -0,0 +1,173 @@
+package dhbw.timetable.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+import dhbw.timetable.rapla.date.DateUtilities;
+
+/**
+ * One version of the global timetables. A state is never modified after it was built,
+ * changes build a new one which {@link TimetableManager} publishes with a single reference
+ * swap. Readers on any thread therefore see either the old or the new weeks, never a map
+ * that is being filled. The week lists must not be modified either.
+ * <p>
+ * Weeks are keyed by the epoch day of their monday. The map by TimelessDate and the
+ * flattened views are built on first use and then shared by all readers of the state.
+ */
+public final class TimetableState {
+
+    public static final TimetableState EMPTY = new TimetableState(
+            new EpochDayMap<ArrayList<BackportAppointment>>(), new EpochDayMap<Long>());
+
+    // View requests of all states, for the cache hit rate
+    private static final AtomicInteger viewHits = new AtomicInteger(), viewMisses = new AtomicInteger();
+
+    private final EpochDayMap<ArrayList<BackportAppointment>> weeks;
+    // Content hash of each week, computed when it is added
+    private final EpochDayMap<Long> hashes;
+
+    // Built on first use, guarded by this
+    private Map<TimelessDate, ArrayList<BackportAppointment>> byDate;
+    private AppointmentIndex index;
+    private List<BackportAppointment> list;
+    private Set<BackportAppointment> set;
+
+    private TimetableState(EpochDayMap<ArrayList<BackportAppointment>> weeks, EpochDayMap<Long> hashes) {
+        this.weeks = weeks;
+        this.hashes = hashes;
+    }
+
+    /**
+     * @return a state of the given weeks, later changes of the map do not affect it
+     */
+    public static TimetableState of(Map<TimelessDate, ArrayList<BackportAppointment>> weeks) {
+        return EMPTY.with(weeks);
+    }
+
+    /**
+     * @return a state with the given weeks added or replaced
+     */
+    public TimetableState with(Map<TimelessDate, ArrayList<BackportAppointment>> changed) {
+        if (changed.isEmpty()) return this;
+        EpochDayMap<ArrayList<BackportAppointment>> next = new EpochDayMap<>(weeks);
+        EpochDayMap<Long> nextHashes = new EpochDayMap<>(hashes);
+        for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : changed.entrySet()) {
+            final int monday = EpochDays.of(week.getKey());
+            next.put(monday, week.getValue());
+            nextHashes.put(monday, ContentHash.of(week.getValue()));
+        }
+        return new TimetableState(next, nextHashes);
+    }
+
+    /**
+     * @return a state without the weeks of the given mondays
+     */
+    public TimetableState without(Collection<Integer> mondays) {
+        if (mondays.isEmpty()) return this;
+        EpochDayMap<ArrayList<BackportAppointment>> next = new EpochDayMap<>(weeks);
+        EpochDayMap<Long> nextHashes = new EpochDayMap<>(hashes);
+        for (int monday : mondays) {
+            next.remove(monday);
+            nextHashes.remove(monday);
+        }
+        return next.isEmpty() ? EMPTY : new TimetableState(next, nextHashes);
+    }
+
+    public boolean hasWeek(int monday) {
+        return weeks.containsKey(monday);
+    }
+
+    /**
+     * @return appointments of the week starting at the given monday, null if it is not loaded
+     */
+    public ArrayList<BackportAppointment> getWeek(int monday) {
+        return weeks.get(monday);
+    }
+
+    /**
+     * @return {@link ContentHash} of the week starting at the given monday, 0 if it is not loaded
+     */
+    public long getWeekHash(int monday) {
+        final Long hash = hashes.get(monday);
+        return hash != null ? hash : 0;
+    }
+
+    /**
+     * @return epoch days of the mondays of all loaded weeks, ascending
+     */
+    public int[] getMondays() {
+        return weeks.keys();
+    }
+
+    /**
+     * @return the weeks by their monday, unmodifiable. Only for callers that need dates
+     * as keys, lookups by epoch day are cheaper with {@link #getWeek}.
+     */
+    public synchronized Map<TimelessDate, ArrayList<BackportAppointment>> getWeeks() {
+        if (byDate == null) {
+            HashMap<TimelessDate, ArrayList<BackportAppointment>> map = new HashMap<>();
+            for (int monday : weeks.keys()) {
+                TimelessDate date = new TimelessDate();
+                EpochDays.apply(monday, date);
+                DateUtilities.Backport.Normalize(date);
+                map.put(date, weeks.get(monday));
+            }
+            byDate = Collections.unmodifiableMap(map);
+        }
+        return byDate;
+    }
+
+    public synchronized AppointmentIndex getIndex() {
+        if (index == null) {
+            viewMisses.incrementAndGet();
+            ArrayList<ArrayList<BackportAppointment>> all = new ArrayList<>();
+            for (int monday : weeks.keys()) all.add(weeks.get(monday));
+            index = AppointmentIndex.of(all);
+        } else {
+            viewHits.incrementAndGet();
+        }
+        return index;
+    }
+
+    public synchronized List<BackportAppointment> getList() {
+        if (list == null) {
+            viewMisses.incrementAndGet();
+            ArrayList<BackportAppointment> all = new ArrayList<>();
+            for (int monday : weeks.keys()) all.addAll(weeks.get(monday));
+            list = Collections.unmodifiableList(all);
+        } else {
+            viewHits.incrementAndGet();
+        }
+        return list;
+    }
+
+    public synchronized Set<BackportAppointment> getSet() {
+        if (set == null) {
+            viewMisses.incrementAndGet();
+            LinkedHashSet<BackportAppointment> all = new LinkedHashSet<>();
+            for (int monday : weeks.keys()) all.addAll(weeks.get(monday));
+            set = Collections.unmodifiableSet(all);
+        } else {
+            viewHits.incrementAndGet();
+        }
+        return set;
+    }
+
+    /**
+     * @return share of view requests served without rebuilding, 0 if there were none
+     */
+    static float getViewCacheHitRate() {
+        final int hits = viewHits.get();
+        final int requests = hits + viewMisses.get();
+        return requests > 0 ? (float) hits / requests : 0;
+    }
+}
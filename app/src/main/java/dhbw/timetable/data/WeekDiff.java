@@ -0,0 +1,208 @@
+package dhbw.timetable.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+
+/**
+ * Typed differences between two versions of the timetables. Appointments with identical
+ * content are unchanged. The others are aligned by identity, which is their title and
+ * persons, in chronological order: a pair on another day was MOVED, on the same day at
+ * another time RETIMED, and additionally ROOM_CHANGED if the resources differ. What has
+ * no counterpart was ADDED or REMOVED. Lectures moved into another week are aligned too.
+ * <p>
+ * Only weeks contained in both versions are compared, a week that was not loaded before
+ * is no change. Each week costs time linear in its number of appointments and weeks
+ * with equal {@link ContentHash} are skipped after one pass.
+ */
+public final class WeekDiff {
+
+    public static final int ADDED = 1;
+    public static final int REMOVED = 2;
+    public static final int MOVED = 3;
+    public static final int RETIMED = 4;
+    public static final int ROOM_CHANGED = 5;
+
+    public static final class Change {
+        private final int type;
+        private final BackportAppointment old, now;
+
+        Change(int type, BackportAppointment old, BackportAppointment now) {
+            this.type = type;
+            this.old = old;
+            this.now = now;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * @return the previous version, null if ADDED
+         */
+        public BackportAppointment getOld() {
+            return old;
+        }
+
+        /**
+         * @return the new version, null if REMOVED
+         */
+        public BackportAppointment getNow() {
+            return now;
+        }
+
+        @Override
+        public String toString() {
+            final String[] names = {"ADDED", "REMOVED", "MOVED", "RETIMED", "ROOM_CHANGED"};
+            return names[type - 1] + " " + (old != null ? old : "") + (old != null && now != null ? " -> " : "")
+                    + (now != null ? now : "");
+        }
+    }
+
+    private WeekDiff() {
+    }
+
+    /**
+     * @return the changes from old to now, week by week
+     */
+    public static List<Change> compare(Map<TimelessDate, ArrayList<BackportAppointment>> old,
+                                       Map<TimelessDate, ArrayList<BackportAppointment>> now) {
+        EpochDayMap<ArrayList<BackportAppointment>> oldWeeks = new EpochDayMap<>(old.size());
+        for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : old.entrySet()) {
+            oldWeeks.put(EpochDays.of(week.getKey()), week.getValue());
+        }
+        ArrayList<Change> changes = new ArrayList<>();
+        ArrayList<BackportAppointment> removed = new ArrayList<>();
+        ArrayList<BackportAppointment> added = new ArrayList<>();
+        for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : now.entrySet()) {
+            final ArrayList<BackportAppointment> before = oldWeeks.get(EpochDays.of(week.getKey()));
+            if (before != null) {
+                compareWeek(before, week.getValue(), changes, removed, added);
+            }
+        }
+        // Whatever is left has no counterpart within its week
+        align(removed, added, changes);
+        for (BackportAppointment a : removed) {
+            if (a != null) changes.add(new Change(REMOVED, a, null));
+        }
+        for (BackportAppointment a : added) {
+            if (a != null) changes.add(new Change(ADDED, null, a));
+        }
+        return changes;
+    }
+
+    private static void compareWeek(List<BackportAppointment> old, List<BackportAppointment> now,
+                                    List<Change> changes, List<BackportAppointment> removed,
+                                    List<BackportAppointment> added) {
+        if (old.size() == now.size() && ContentHash.of(old) == ContentHash.of(now) && same(old, now)) {
+            return;
+        }
+        // Unchanged appointments first, by content
+        Map<Long, ArrayDeque<Integer>> byContent = new HashMap<>();
+        for (int i = 0; i < old.size(); i++) {
+            queue(byContent, ContentHash.of(old.get(i))).add(i);
+        }
+        final boolean[] unchanged = new boolean[old.size()];
+        ArrayList<BackportAppointment> newOnly = new ArrayList<>();
+        for (BackportAppointment a : now) {
+            final ArrayDeque<Integer> candidates = byContent.get(ContentHash.of(a));
+            final int j = candidates != null ? removeEqual(candidates, old, a) : -1;
+            if (j >= 0) {
+                unchanged[j] = true;
+            } else {
+                newOnly.add(a);
+            }
+        }
+        ArrayList<BackportAppointment> oldOnly = new ArrayList<>();
+        for (int i = 0; i < old.size(); i++) {
+            if (!unchanged[i]) oldOnly.add(old.get(i));
+        }
+        align(oldOnly, newOnly, changes);
+        for (BackportAppointment a : oldOnly) {
+            if (a != null) removed.add(a);
+        }
+        for (BackportAppointment a : newOnly) {
+            if (a != null) added.add(a);
+        }
+    }
+
+    /**
+     * Pairs appointments of both lists with the same identity in their order and records
+     * the changes of each pair. Paired entries are set to null in both lists.
+     */
+    private static void align(List<BackportAppointment> old, List<BackportAppointment> now, List<Change> changes) {
+        if (old.isEmpty() || now.isEmpty()) return;
+        Map<Long, ArrayDeque<Integer>> byIdentity = new HashMap<>();
+        for (int i = 0; i < old.size(); i++) {
+            queue(byIdentity, identity(old.get(i))).add(i);
+        }
+        for (int i = 0; i < now.size(); i++) {
+            final BackportAppointment a = now.get(i);
+            final ArrayDeque<Integer> candidates = byIdentity.get(identity(a));
+            if (candidates == null) continue;
+            for (Iterator<Integer> it = candidates.iterator(); it.hasNext(); ) {
+                final int j = it.next();
+                final BackportAppointment b = old.get(j);
+                if (ContentHash.equal(a.getTitle(), b.getTitle()) && ContentHash.equal(a.getPersons(), b.getPersons())) {
+                    it.remove();
+                    old.set(j, null);
+                    now.set(i, null);
+                    pair(b, a, changes);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void pair(BackportAppointment old, BackportAppointment now, List<Change> changes) {
+        if (EpochDays.of(old.getStartDate()) != EpochDays.of(now.getStartDate())) {
+            changes.add(new Change(MOVED, old, now));
+        } else if (EpochDays.minuteOfDay(old.getStartDate()) != EpochDays.minuteOfDay(now.getStartDate())
+                || EpochDays.minuteOfDay(old.getEndDate()) != EpochDays.minuteOfDay(now.getEndDate())) {
+            changes.add(new Change(RETIMED, old, now));
+        }
+        if (!ContentHash.equal(old.getResources(), now.getResources())) {
+            changes.add(new Change(ROOM_CHANGED, old, now));
+        }
+    }
+
+    private static boolean same(List<BackportAppointment> old, List<BackportAppointment> now) {
+        for (int i = 0; i < old.size(); i++) {
+            if (!ContentHash.equal(old.get(i), now.get(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return index of the first old appointment in candidates equal to a, removed from them, or -1
+     */
+    private static int removeEqual(ArrayDeque<Integer> candidates, List<BackportAppointment> old, BackportAppointment a) {
+        for (Iterator<Integer> it = candidates.iterator(); it.hasNext(); ) {
+            final int j = it.next();
+            if (ContentHash.equal(a, old.get(j))) {
+                it.remove();
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    private static long identity(BackportAppointment a) {
+        return ContentHash.mix(ContentHash.mix(ContentHash.OFFSET, a.getTitle()), a.getPersons());
+    }
+
+    private static <T> ArrayDeque<T> queue(Map<Long, ArrayDeque<T>> map, long key) {
+        ArrayDeque<T> queue = map.get(key);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            map.put(key, queue);
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,114 @@
+package dhbw.timetable.data;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+
+/**
+ * Downloads weeks in at most the given number of range requests, all at the same time on
+ * the given executor, so a sync takes about as long as its slowest request instead of the
+ * sum of all of them. With one request the weeks come in a single range, as before there
+ * was any parallelism. Results are merged in order of the weeks.
+ */
+final class WeekFetcher {
+
+    /**
+     * Downloads the weeks from one monday to another, both inclusive
+     */
+    interface Source {
+        Map<TimelessDate, ArrayList<BackportAppointment>> fetch(TimelessDate from, TimelessDate to) throws Exception;
+    }
+
+    private final Source source;
+    private final ExecutorService executor;
+    private final int requests;
+
+    /**
+     * @param requests most requests per fetch, should match the threads of the executor
+     */
+    WeekFetcher(Source source, ExecutorService executor, int requests) {
+        this.source = source;
+        this.executor = executor;
+        this.requests = requests;
+    }
+
+    /**
+     * @return appointments of the given mondays in ascending order, weeks without any are
+     * empty. Weeks in between that came with the same request are included. Fails with the
+     * error of the first failed chunk, the others are cancelled.
+     */
+    Map<TimelessDate, ArrayList<BackportAppointment>> fetch(Collection<Integer> mondays) throws Exception {
+        final List<int[]> chunks = chunksOf(mondays, requests);
+        ArrayList<Future<Map<TimelessDate, ArrayList<BackportAppointment>>>> results = new ArrayList<>();
+        for (final int[] chunk : chunks) {
+            results.add(executor.submit(() -> source.fetch(weekOf(chunk[0]), weekOf(chunk[1]))));
+        }
+        Map<TimelessDate, ArrayList<BackportAppointment>> weeks = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                final int[] chunk = chunks.get(i);
+                Map<TimelessDate, ArrayList<BackportAppointment>> fetched = results.get(i).get();
+                Map<Integer, GregorianCalendar> received = new HashMap<>();
+                for (GregorianCalendar cal : fetched.keySet()) {
+                    received.put(EpochDays.of(cal), cal);
+                }
+                for (int monday = chunk[0]; monday <= chunk[1]; monday += 7) {
+                    final GregorianCalendar week = received.remove(monday);
+                    // Weeks without any appointment may be left out by the source
+                    weeks.put(week != null ? new TimelessDate(week) : weekOf(monday),
+                            week != null ? fetched.get(week) : new ArrayList<BackportAppointment>());
+                }
+                for (GregorianCalendar week : received.values()) {
+                    weeks.put(new TimelessDate(week), fetched.get(week));
+                }
+            }
+        } catch (ExecutionException e) {
+            for (Future<?> result : results) result.cancel(true);
+            final Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+        Log.i("TTM", "Fetched " + weeks.size() + " weeks in " + chunks.size() + " requests");
+        return weeks;
+    }
+
+    static TimelessDate weekOf(int monday) {
+        TimelessDate week = new TimelessDate();
+        EpochDays.apply(monday, week);
+        return week;
+    }
+
+    /**
+     * @param mondays ascending
+     * @return first and last monday of every chunk, ascending. The mondays are split into
+     * at most the given number of chunks with about as many mondays each.
+     */
+    static List<int[]> chunksOf(Collection<Integer> mondays, int count) {
+        final int size = mondays.size();
+        final int chunkCount = Math.max(1, Math.min(count, size));
+        ArrayList<int[]> chunks = new ArrayList<>();
+        int i = 0, chunk = 0;
+        for (int monday : mondays) {
+            // Chunk c starts at the monday c * size / chunkCount
+            if (i == (int) ((long) chunk * size / chunkCount)) {
+                chunks.add(new int[]{monday, monday});
+                chunk++;
+            } else {
+                chunks.get(chunks.size() - 1)[1] = monday;
+            }
+            i++;
+        }
+        return chunks;
+    }
+}
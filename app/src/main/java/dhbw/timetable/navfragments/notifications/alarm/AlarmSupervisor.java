@@ -19,21 +19,23 @@ import android.util.Log;
 
 import org.json.JSONArray;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import dhbw.timetable.ActivityHelper;
 import dhbw.timetable.R;
+import dhbw.timetable.data.AppointmentIndex;
+import dhbw.timetable.data.EpochDays;
+import dhbw.timetable.data.SnapshotReader;
 import dhbw.timetable.data.TimetableManager;
+import dhbw.timetable.data.TimetableState;
 import dhbw.timetable.dialogs.ErrorDialog;
 import dhbw.timetable.rapla.data.event.BackportAppointment;
 import dhbw.timetable.rapla.data.time.TimelessDate;
@@ -165,33 +167,18 @@ public final class AlarmSupervisor {
         DateUtilities.Backport.Normalize(monday);
         Log.i("ALARM", "today=" + DateUtilities.GERMAN_STD_SDATEFORMAT.format(today.getTime())
                 + ", monday=" + DateUtilities.GERMAN_STD_SDATEFORMAT.format(monday.getTime()));
-        Map<TimelessDate, ArrayList<BackportAppointment>> data = TimetableManager.getInstance().getGlobals();
+        final int mondayDay = EpochDays.of(monday);
+        TimetableState data = TimetableManager.getInstance().getState();
 
-        // Refill data from drive if empty
-        if (data.isEmpty()) {
-            Log.i("ALARM", "Data from RAM was empty... :( Loading now offline globals");
+        // Read this week from drive if it is not in RAM
+        if (!data.hasWeek(mondayDay)) {
+            Log.i("ALARM", "Week was not in RAM... :( Loading now offline week");
+            Map<TimelessDate, ArrayList<BackportAppointment>> offline = new HashMap<>();
             try {
-                FileInputStream fis = app.openFileInput(app.getResources().getString(R.string.TIMETABLES_FILE));
-                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(fis));
-
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    if (line.isEmpty()) continue;
-                    String[] aData = line.split("\t");
-                    String[] date = aData[0].split("\\.");
-                    TimelessDate g = new TimelessDate();
-                    g.set(Calendar.DAY_OF_MONTH, Integer.parseInt(date[0]));
-                    g.set(Calendar.MONTH, Integer.parseInt(date[1]) - 1);
-                    g.set(Calendar.YEAR, Integer.parseInt(date[2]));
-
-                    BackportAppointment a = new BackportAppointment(aData[1], g, aData[2], aData[3], aData[4]);
-
-                    TimetableManager.getInstance().insertAppointment(
-                            TimetableManager.getInstance().getGlobals(),
-                            (TimelessDate) g.clone(), a);
-                }
+                TimetableManager.getInstance().getOfflineStore(app)
+                        .read(mondayDay, new SnapshotReader.Collector(offline));
+                data = TimetableState.of(offline);
                 Log.i("ALARM", "Success!");
-                bufferedReader.close();
             } catch (Exception e) {
                 e.printStackTrace();
 
@@ -201,22 +188,16 @@ public final class AlarmSupervisor {
         }
 
         Log.i("ALARM", "Checking now...");
-        if (data.containsKey(monday)) {
-            ArrayList<BackportAppointment> weekAppointments = data.get(monday);
-            first = DateUtilities.Backport.GetFirstAppointmentOfDay(weekAppointments, today);
+        if (data.hasWeek(mondayDay)) {
+            first = data.getIndex().firstOfDay(EpochDays.of(today));
             if (first != null) {
                 Log.i("ALARM", "Found apppointment " + first + " as first! ");
             } else {
-                Log.e("ALARM", "First appointment not found. Debugging week data...");
-                for (BackportAppointment a : weekAppointments) {
-                    Log.e("ALARM", "" + a);
-                }
+                Log.e("ALARM", "First appointment not found in " + data.getWeek(mondayDay).size()
+                        + " appointments of the week");
             }
         } else {
-            Log.e("ALARM", "Could not find week :( Debugging map data...");
-            for (TimelessDate debugMonday : data.keySet()) {
-                Log.e("ALARM", "" + debugMonday + " : " + data.get(debugMonday));
-            }
+            Log.e("ALARM", "Could not find week :( " + data.getMondays().length + " weeks loaded");
         }
 
         return first;
@@ -238,31 +219,22 @@ public final class AlarmSupervisor {
 
         SharedPreferences sharedPref = context.getSharedPreferences(context.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
         if (sharedPref.getBoolean("alarmOnFirstEvent", false)) {
-            Map<TimelessDate, ArrayList<BackportAppointment>> globals = TimetableManager.getInstance().getGlobals();
-            ArrayList<BackportAppointment> appointmentsOfWeek;
-            TimelessDate tempDay;
-            BackportAppointment firstAppointment;
-            for (TimelessDate week : globals.keySet()) {
-                appointmentsOfWeek = globals.get(week);
-                for (int day = 0; day < 5; day++) {
-                    tempDay = (TimelessDate) week.clone();
-                    DateUtilities.Backport.AddDays(tempDay, day);
-                    firstAppointment = DateUtilities.Backport.GetFirstAppointmentOfDay(appointmentsOfWeek, tempDay);
-                    // Only if there are appointments
-                    if (firstAppointment != null) {
-                        // apply shifting
-                        int shifter = 0;
-                        shifter += sharedPref.getInt("alarmFirstShiftHour", 0) * 60 * 60 * 1000;
-                        shifter += sharedPref.getInt("alarmFirstShiftMinute", 0) * 60 * 1000;
-
-                        GregorianCalendar afterShift = (GregorianCalendar) firstAppointment.getStartDate().clone();
-                        afterShift.setTimeInMillis(afterShift.getTimeInMillis() - shifter);
-                        // If is not over
-                        GregorianCalendar today = (GregorianCalendar) Calendar.getInstance();
-                        if (today.getTimeInMillis() < afterShift.getTimeInMillis()) {
-                            addAlarm(context, afterShift);
-                        }
-                    }
+            // Sorted by start, so the first appointment of a day is the first one with its epoch day
+            AppointmentIndex index = TimetableManager.getInstance().getGlobalsIndex();
+            int shifter = 0;
+            shifter += sharedPref.getInt("alarmFirstShiftHour", 0) * 60 * 60 * 1000;
+            shifter += sharedPref.getInt("alarmFirstShiftMinute", 0) * 60 * 1000;
+            final long now = System.currentTimeMillis();
+            for (int i = 0; i < index.size(); i++) {
+                final int day = index.getDay(i);
+                // Only the first appointment of monday to friday
+                if ((i > 0 && index.getDay(i - 1) == day) || day - EpochDays.monday(day) >= 5) continue;
+
+                GregorianCalendar afterShift = (GregorianCalendar) index.get(i).getStartDate().clone();
+                afterShift.setTimeInMillis(afterShift.getTimeInMillis() - shifter);
+                // If is not over
+                if (now < afterShift.getTimeInMillis()) {
+                    addAlarm(context, afterShift);
                 }
             }
             Log.i("ALARM", "Rescheduled " + getAlarmIds(context).size() + " alarms");
@@ -7,6 +7,7 @@ import android.content.Intent;
 import android.util.Log;
 
 import dhbw.timetable.data.TimetableManager;
+import dhbw.timetable.services.SyncScheduler;
 
 public class DeviceBootReceiver extends BroadcastReceiver {
 
@@ -14,6 +15,8 @@ public class DeviceBootReceiver extends BroadcastReceiver {
     public void onReceive(final Context context, final Intent intent) {
         if (intent.getAction() != null && intent.getAction().equals("android.intent.action.BOOT_COMPLETED")) {
             Log.i("BOOT", "Boot completed. Loading offline globals and resetup alarms");
+            // Alarms of the background sync do not survive a reboot
+            SyncScheduler.schedule(context);
             TimetableManager.getInstance().loadOfflineGlobals((Application) context.getApplicationContext(), () -> {
                 AlarmSupervisor.getInstance().initialize();
                 AlarmSupervisor.getInstance().rescheduleAllAlarms(context.getApplicationContext());
@@ -1,7 +1,6 @@
 package dhbw.timetable.navfragments.preferences;
 
 import android.app.Activity;
-import android.app.Application;
 import android.content.Intent;
 import android.os.Bundle;
 import android.preference.EditTextPreference;
@@ -11,7 +10,6 @@ import android.support.v7.app.ActionBar;
 import android.util.Log;
 import android.view.MenuItem;
 
-import dhbw.timetable.LoadingActivity;
 import dhbw.timetable.R;
 import dhbw.timetable.dialogs.InfoDialog;
 import dhbw.timetable.navfragments.preferences.timetables.ManageTimetablesActivity;
@@ -57,8 +55,6 @@ public class PreferencesActivity extends AppCompatPreferenceActivity {
     }
 
     public static class PrefsFragment extends PreferenceFragment {
-        boolean deletedTimetables = false;
-
         @Override
         public void onCreate(Bundle savedInstanceState) {
             super.onCreate(savedInstanceState);
@@ -100,14 +96,12 @@ public class PreferencesActivity extends AppCompatPreferenceActivity {
             setHasOptionsMenu(true);
         }
 
+        /**
+         * Offline weeks are stored one by one, so the cached ones stay valid. Weeks the
+         * new range adds are downloaded by the next sync.
+         */
         private void onSyncRangeChange() {
-            Application application = this.getActivity().getApplication();
-            if (application.deleteFile(application.getResources().getString(R.string.TIMETABLES_FILE))) {
-                Log.i("FILE", "Successfully deleted timetables file.");
-                deletedTimetables = true;
-            } else {
-                Log.w("FILE", "Unable to delete timetables file! Do you have one?");
-            }
+            Log.i("FILE", "Sync range changed, keeping offline timetables.");
         }
 
         /**
@@ -118,10 +112,6 @@ public class PreferencesActivity extends AppCompatPreferenceActivity {
             int id = item.getItemId();
             if (id == android.R.id.home) {
                 final Activity activity = this.getActivity();
-                if (deletedTimetables) {
-                    Intent i = new Intent(activity, LoadingActivity.class);
-                    activity.startActivity(i);
-                }
                 activity.finish();
                 activity.overridePendingTransition(0, 0);
                 return true;
@@ -14,6 +14,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import dhbw.timetable.R;
+import dhbw.timetable.data.TimetableManager;
 import dhbw.timetable.dialogs.InfoDialog;
 import dhbw.timetable.rapla.network.NetworkUtilities;
 
@@ -103,10 +104,14 @@ public class EditTimetableActivity extends AppCompatActivity {
         } else if (id == R.id.action_edit_delete_timetable) {
             SharedPreferences sharedPref = this.getSharedPreferences(
                     getString(R.string.preference_file_key), Context.MODE_PRIVATE);
+            final String urlBefore = sharedPref.getString("t#" + nameBefore, null);
             SharedPreferences.Editor editor = sharedPref.edit();
             editor.remove("t#" + nameBefore);
             // TODO YN Dialog: Are you sure?
             editor.apply();
+            if (urlBefore != null) {
+                TimetableManager.getInstance().removeOfflineTimetable(getApplication(), urlBefore);
+            }
             finish();
             overridePendingTransition(0, 0);
         }
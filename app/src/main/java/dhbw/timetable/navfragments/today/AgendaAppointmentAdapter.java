@@ -7,7 +7,6 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
-import android.widget.Toast;
 
 import java.util.LinkedHashSet;
 
@@ -15,7 +14,6 @@ import dhbw.timetable.ActivityHelper;
 import dhbw.timetable.CourseDetailsActivity;
 import dhbw.timetable.R;
 import dhbw.timetable.data.AgendaAppointment;
-import dhbw.timetable.data.TimetableManager;
 
 /**
  * Created by Hendrik Ulbrich (C) 2017
@@ -44,22 +42,18 @@ class AgendaAppointmentAdapter extends RecyclerView.Adapter<AgendaAppointmentAda
         final RecyclerView mRecyclerView = (RecyclerView) parent;
 
         view.setOnClickListener(child -> {
-            if (!TimetableManager.getInstance().isRunning()) {
-                int itemPos = mRecyclerView.getChildLayoutPosition(child);
-                AgendaAppointment item = (AgendaAppointment) appointments.toArray()[itemPos];
-                if (!item.isBreak()) {
-                    Activity activity = ActivityHelper.getActivity();
-                    if (activity != null) {
-                        Intent detailsIntent = new Intent(activity, CourseDetailsActivity.class);
-                        detailsIntent.putExtra("startTime", item.getStartTime());
-                        detailsIntent.putExtra("endTime", item.getEndTime());
-                        detailsIntent.putExtra("title", item.getTitle());
-                        detailsIntent.putExtra("info", item.getInfo());
-                        activity.startActivity(detailsIntent);
-                    }
+            int itemPos = mRecyclerView.getChildLayoutPosition(child);
+            AgendaAppointment item = (AgendaAppointment) appointments.toArray()[itemPos];
+            if (!item.isBreak()) {
+                Activity activity = ActivityHelper.getActivity();
+                if (activity != null) {
+                    Intent detailsIntent = new Intent(activity, CourseDetailsActivity.class);
+                    detailsIntent.putExtra("startTime", item.getStartTime());
+                    detailsIntent.putExtra("endTime", item.getEndTime());
+                    detailsIntent.putExtra("title", item.getTitle());
+                    detailsIntent.putExtra("info", item.getInfo());
+                    activity.startActivity(detailsIntent);
                 }
-            } else {
-                Toast.makeText(view.getContext(), "I'm currently busy, sorry!", Toast.LENGTH_SHORT).show();
             }
         });
 
@@ -21,16 +21,18 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.GridLayout;
 import android.widget.TextView;
-import android.widget.Toast;
 
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.LinkedHashSet;
+import java.util.List;
 
 import dhbw.timetable.MainActivity;
 import dhbw.timetable.R;
 import dhbw.timetable.data.AgendaAppointment;
+import dhbw.timetable.data.AppointmentIndex;
+import dhbw.timetable.data.EpochDays;
 import dhbw.timetable.data.ErrorCallback;
 import dhbw.timetable.data.TimetableManager;
 import dhbw.timetable.dialogs.ErrorDialog;
@@ -92,12 +94,10 @@ public class TodayFragment extends Fragment {
     @Override
     public void onStart() {
         super.onStart();
-        final TimelessDate today = new TimelessDate();
-        final TimelessDate week = new TimelessDate();
-        DateUtilities.Backport.Normalize(week);
+        final int today = EpochDays.of(new TimelessDate());
         final View view = getView();
         TimetableManager.getInstance().loadOfflineGlobals(getActivity().getApplication(), () -> {
-            ArrayList<BackportAppointment> appointments = DateUtilities.Backport.GetAppointmentsOfDay(today, TimetableManager.getInstance().getGlobals().get(week));
+            List<BackportAppointment> appointments = TimetableManager.getInstance().getGlobalsIndex().day(today);
             if (appointments.size() == 0) {
                 Log.w("TODAY", "Warning: No appointments found for day.");
                 TimetableManager.getInstance().updateGlobals(TodayFragment.this.getActivity().getApplication(), () -> {
@@ -110,7 +110,20 @@ public class TodayFragment extends Fragment {
             } else {
                 applyGlobalContent(view);
             }
-        });
+        }, shownWeeks());
+    }
+
+    /**
+     * Mondays of the weeks this fragment shows: today and tomorrow lie in this or the
+     * next week, the week summary switches to the next week on weekends.
+     */
+    private static TimelessDate[] shownWeeks() {
+        TimelessDate thisWeek = new TimelessDate();
+        DateUtilities.Backport.Normalize(thisWeek);
+        TimelessDate nextWeek = (TimelessDate) thisWeek.clone();
+        DateUtilities.Backport.NextWeek(nextWeek);
+        DateUtilities.Backport.Normalize(nextWeek);
+        return new TimelessDate[]{thisWeek, nextWeek};
     }
 
     @Override
@@ -125,39 +138,35 @@ public class TodayFragment extends Fragment {
         final View view = getView();
         //noinspection SimplifiableIfStatement
         if (id == R.id.action_refresh_today) {
-            if (!TimetableManager.getInstance().isRunning()) {
-                TimetableManager.getInstance().loadOfflineGlobals(getActivity().getApplication(), () -> {
-                    try {
-                        if (view != null) {
-                            applyGlobalContent(view);
-                        } else {
-                            Log.w("TODAY", "WARNING: Today tried to select option without view. (Too early)");
-                        }
-                    } catch (IllegalArgumentException e) {
-                        e.printStackTrace();
+            TimetableManager.getInstance().loadOfflineGlobals(getActivity().getApplication(), () -> {
+                try {
+                    if (view != null) {
+                        applyGlobalContent(view);
+                    } else {
+                        Log.w("TODAY", "WARNING: Today tried to select option without view. (Too early)");
                     }
-                });
-                TimetableManager.getInstance().updateGlobals(getActivity().getApplication(), () -> {
-                    try {
-                        if (view != null) {
-                            applyGlobalContent(view);
-                            Snackbar.make(view, "Updated!", Snackbar.LENGTH_SHORT).show();
-                        } else {
-                            Log.w("TODAY", "WARNING: Today tried to select option without view. (Too early)");
-                        }
-                    } catch (IllegalArgumentException e) {
-                        e.printStackTrace();
+                } catch (IllegalArgumentException e) {
+                    e.printStackTrace();
+                }
+            }, shownWeeks());
+            // Joins a running download instead of starting another one
+            TimetableManager.getInstance().updateGlobals(getActivity().getApplication(), () -> {
+                try {
+                    if (view != null) {
+                        applyGlobalContent(view);
+                        Snackbar.make(view, "Updated!", Snackbar.LENGTH_SHORT).show();
+                    } else {
+                        Log.w("TODAY", "WARNING: Today tried to select option without view. (Too early)");
                     }
-                }, string -> {
-                    if (TodayFragment.this.getActivity().getFragmentManager() != null)
-                        ErrorDialog.newInstance("Error", "Unable to update timetable data", string)
-                            .show(TodayFragment.this.getActivity().getFragmentManager(), "TODAYDLERR");
-                });
-                return true;
-            } else {
-                Log.w("ASYNC", "Tried to sync while manager was busy");
-                Toast.makeText(getContext(), "I'm currently busy, sorry!", Toast.LENGTH_SHORT).show();
-            }
+                } catch (IllegalArgumentException e) {
+                    e.printStackTrace();
+                }
+            }, string -> {
+                if (TodayFragment.this.getActivity().getFragmentManager() != null)
+                    ErrorDialog.newInstance("Error", "Unable to update timetable data", string)
+                        .show(TodayFragment.this.getActivity().getFragmentManager(), "TODAYDLERR");
+            });
+            return true;
         }
 
         return false;
@@ -175,11 +184,9 @@ public class TodayFragment extends Fragment {
 
     private void applyAgenda(View view) {
         agendaAppointmentSet.clear();
-        String currDate = DateUtilities.Backport.GetCurrentDate();
-        for (BackportAppointment a : TimetableManager.getInstance().getGlobalsAsList()) {
-            if (a.getDate().equals(currDate)) {
-                agendaAppointmentSet.add(new AgendaAppointment(a.getStartTime(), a.getEndTime(), a.getTitle(), a.getPersons(), a.getResources(), false));
-            }
+        final int today = EpochDays.of(new TimelessDate());
+        for (BackportAppointment a : TimetableManager.getInstance().getGlobalsIndex().day(today)) {
+            agendaAppointmentSet.add(new AgendaAppointment(a.getStartTime(), a.getEndTime(), a.getTitle(), a.getPersons(), a.getResources(), false));
         }
         int size = agendaAppointmentSet.size();
         TextView placeholder = view.findViewById(R.id.agendaEmptyPlaceholder);
@@ -213,17 +220,15 @@ public class TodayFragment extends Fragment {
     }
 
     private void applyTomorrow(View view) {
-        TimelessDate tomorrow = new TimelessDate();
-        DateUtilities.Backport.AddDays(tomorrow, 1);
-        LinkedHashSet<BackportAppointment> tomorrowAppointments = DateUtilities.Backport.GetAppointmentsOfDayAsSet(tomorrow,
-                TimetableManager.getInstance().getGlobalsAsSet());
+        final int tomorrow = EpochDays.of(new TimelessDate()) + 1;
+        List<BackportAppointment> tomorrowAppointments = TimetableManager.getInstance().getGlobalsIndex().day(tomorrow);
         TextView beginView = view.findViewById(R.id.beginTime);
         TextView tomorrowSummaryView = view.findViewById(R.id.tomorrowSummary);
         if (tomorrowAppointments.size() > 0) {
             final SharedPreferences sharedPref = getActivity().getSharedPreferences(
                     getString(R.string.preference_file_key), Context.MODE_PRIVATE);
 
-            GregorianCalendar startDate = ((BackportAppointment) tomorrowAppointments.toArray()[0]).getStartDate();
+            GregorianCalendar startDate = tomorrowAppointments.get(0).getStartDate();
             int shiftInMillis = ((60 * sharedPref.getInt("alarmFirstShiftHour", 0))
                     + sharedPref.getInt("alarmFirstShiftMinute", 0)) * 60 * 1000;
 
@@ -261,17 +266,16 @@ public class TodayFragment extends Fragment {
         }
         DateUtilities.Backport.Normalize(day);
 
-        ArrayList<BackportAppointment> weekAppointments = DateUtilities.Backport.GetWeekAppointments(day,
-                TimetableManager.getInstance().getGlobalsAsList());
+        final AppointmentIndex index = TimetableManager.getInstance().getGlobalsIndex();
+        final int monday = EpochDays.of(day);
+        ArrayList<BackportAppointment> weekAppointments = new ArrayList<>(index.week(monday));
 
         String startTime, endTime;
         int startID = -1, endID = -1;
         BackportAppointment startA, endA;
-        ArrayList<ArrayList<BackportAppointment>> wData = new ArrayList<>();
         for (int d = 0; d < 5; d++) {
             startA = endA = null;
-            ArrayList<BackportAppointment> dayAppointments = DateUtilities.Backport.GetAppointmentsOfDay(day, weekAppointments);
-            wData.add(dayAppointments);
+            List<BackportAppointment> dayAppointments = index.day(monday + d);
             if (dayAppointments.size() > 0) {
                 startA = dayAppointments.get(0);
                 endA = dayAppointments.get(dayAppointments.size() - 1);
@@ -312,16 +316,12 @@ public class TodayFragment extends Fragment {
         GridLayout gl = view.findViewById(R.id.weekGrid);
         gl.removeAllViews();
         Integer[] borders = DateUtilities.Backport.GetBorders(weekAppointments);
-        TodaySummaryRect ra = new TodaySummaryRect(borders[0], borders[1], gl, wData);
+        TodaySummaryRect ra = new TodaySummaryRect(borders[0], borders[1], gl, index, monday);
         ra.setBackgroundColor(Color.WHITE);
         ra.setOnClickListener(v -> {
-            if (!TimetableManager.getInstance().isRunning()) {
-                ((MainActivity) getActivity()).displayFragment(R.id.nav_week);
-                NavigationView navigationView = TodayFragment.this.getActivity().findViewById(R.id.nav_view);
-                navigationView.setCheckedItem(R.id.nav_week);
-            } else {
-                Toast.makeText(getActivity(), "I'm currently busy, sorry!", Toast.LENGTH_SHORT).show();
-            }
+            ((MainActivity) getActivity()).displayFragment(R.id.nav_week);
+            NavigationView navigationView = TodayFragment.this.getActivity().findViewById(R.id.nav_view);
+            navigationView.setCheckedItem(R.id.nav_week);
         });
         gl.addView(ra);
     }
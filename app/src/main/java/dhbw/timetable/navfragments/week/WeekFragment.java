@@ -23,7 +23,6 @@ import android.view.ViewGroup;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
-import android.widget.Toast;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -31,6 +30,8 @@ import java.util.Calendar;
 import java.util.Locale;
 
 import dhbw.timetable.R;
+import dhbw.timetable.data.AppointmentIndex;
+import dhbw.timetable.data.EpochDays;
 import dhbw.timetable.data.TimetableManager;
 import dhbw.timetable.dialogs.ErrorDialog;
 import dhbw.timetable.dialogs.InfoDialog;
@@ -55,55 +56,45 @@ public class WeekFragment extends Fragment {
         final Application application = activity.getApplication();
         final View view = WeekFragment.this.getView();
         if (id == R.id.action_refresh_week) {
-            if (!TimetableManager.getInstance().isRunning()) {
-                TimetableManager.getInstance().updateGlobals(application, () -> {
-                    try {
-                        applyGlobalContent(true, false, view, activity);
-                        Snackbar.make(view, "Updated!", Snackbar.LENGTH_SHORT).show();
-                    } catch (IllegalArgumentException e) {
-                        e.printStackTrace();
-                    }
-                }, string -> ErrorDialog.newInstance("Error", "Unable to update timetable data.", string)
-                        .show(WeekFragment.this.getActivity().getFragmentManager(), "WEEKDLERR2"));
-            } else {
-                Toast.makeText(activity, "I'm currently busy, sorry!", Toast.LENGTH_SHORT).show();
-            }
+            TimetableManager.getInstance().updateGlobals(application, () -> {
+                try {
+                    applyGlobalContent(true, false, view, activity);
+                    Snackbar.make(view, "Updated!", Snackbar.LENGTH_SHORT).show();
+                } catch (IllegalArgumentException e) {
+                    e.printStackTrace();
+                }
+            }, string -> ErrorDialog.newInstance("Error", "Unable to update timetable data.", string)
+                    .show(WeekFragment.this.getActivity().getFragmentManager(), "WEEKDLERR2"));
             return true;
         } else if (id == R.id.action_today_week) {
-            if (!TimetableManager.getInstance().isRunning()) {
-                weekToDisplay = new TimelessDate();
-                displayWeek(view, activity, true);
-            } else {
-                Toast.makeText(activity, "I'm currently busy, sorry!", Toast.LENGTH_SHORT).show();
-            }
+            weekToDisplay = new TimelessDate();
+            displayWeek(view, activity, true);
         }
 
         return false;
     }
 
     private void pickWeek(final View view, final Activity activity) {
-        if (!TimetableManager.getInstance().isRunning()) {
-            DatePickerDialog.OnDateSetListener handler = (dpView, year, month, day) -> {
-                weekToDisplay.set(Calendar.YEAR, year);
-                weekToDisplay.set(Calendar.MONTH, month);
-                weekToDisplay.set(Calendar.DAY_OF_MONTH, day);
-                Log.i("DATE", "Picked date: " + day + "." + month + "." + year);
-                displayWeek(view, activity, false);
-            };
-
-            DatePickerDialog dpd = new DatePickerDialog(getContext(), handler,
-                    weekToDisplay.get(Calendar.YEAR),
-                    weekToDisplay.get(Calendar.MONTH),
-                    weekToDisplay.get(Calendar.DAY_OF_MONTH));
-            dpd.show();
-        } else {
-            Toast.makeText(activity, "I'm currently busy, sorry!", Toast.LENGTH_SHORT).show();
-        }
+        DatePickerDialog.OnDateSetListener handler = (dpView, year, month, day) -> {
+            weekToDisplay.set(Calendar.YEAR, year);
+            weekToDisplay.set(Calendar.MONTH, month);
+            weekToDisplay.set(Calendar.DAY_OF_MONTH, day);
+            Log.i("DATE", "Picked date: " + day + "." + month + "." + year);
+            displayWeek(view, activity, false);
+        };
+
+        DatePickerDialog dpd = new DatePickerDialog(getContext(), handler,
+                weekToDisplay.get(Calendar.YEAR),
+                weekToDisplay.get(Calendar.MONTH),
+                weekToDisplay.get(Calendar.DAY_OF_MONTH));
+        dpd.show();
     }
 
     private void displayWeek(final View view, final Activity activity, final boolean today) {
-        TimetableManager.getInstance().loadOfflineGlobals(activity.getApplication(), () -> applyGlobalContent(false, false, view, activity));
+        TimetableManager.getInstance().loadOfflineGlobals(activity.getApplication(),
+                () -> applyGlobalContent(false, false, view, activity), displayedMonday());
         if (applyGlobalContent(true, false, view, activity)) {
+            // Joins a running download instead of starting another one
             TimetableManager.getInstance().updateGlobals(activity.getApplication(), () -> {
                 try {
                     applyGlobalContent(false, false, view, activity);
@@ -113,23 +104,26 @@ public class WeekFragment extends Fragment {
                 }
             }, string -> ErrorDialog.newInstance("Warning", "Unable to update timetable data. The data may be not up to date.", string).show(WeekFragment.this.getActivity().getFragmentManager(), "WEEKDLERR"));
         } else {
-            if (!TimetableManager.getInstance().isRunning()) {
-                TimetableManager.getInstance().reorderSpecialGlobals(activity.getApplication(), () -> {
-                    try {
-                        applyGlobalContent(false, true, view, activity);
-                        Snackbar.make(view, "Updated special date!", Snackbar.LENGTH_SHORT).show();
-                    } catch (IllegalArgumentException e) {
-                        e.printStackTrace();
-                    }
-                }, string -> ErrorDialog.newInstance("Error", "Unable to load " +
-                        "specifiy week. This week is not in your sync range. There is no data for it.", string).show(WeekFragment.this.getActivity().getFragmentManager(), "WEEKDLERR"), weekToDisplay);
-            } else {
-                Log.w("ASYNC", "Tried to sync while manager was busy.");
-                Toast.makeText(activity, "I'm currently busy, sorry!", Toast.LENGTH_SHORT).show();
-            }
+            // A running sync drops weeks outside of the sync range when it finishes
+            final TimelessDate week = (TimelessDate) weekToDisplay.clone();
+            TimetableManager.getInstance().afterSync(() -> TimetableManager.getInstance().reorderSpecialGlobals(activity.getApplication(), () -> {
+                try {
+                    applyGlobalContent(false, true, view, activity);
+                    Snackbar.make(view, "Updated special date!", Snackbar.LENGTH_SHORT).show();
+                } catch (IllegalArgumentException e) {
+                    e.printStackTrace();
+                }
+            }, string -> ErrorDialog.newInstance("Error", "Unable to load " +
+                    "specifiy week. This week is not in your sync range. There is no data for it.", string).show(WeekFragment.this.getActivity().getFragmentManager(), "WEEKDLERR"), week));
         }
     }
 
+    private TimelessDate displayedMonday() {
+        TimelessDate monday = (TimelessDate) weekToDisplay.clone();
+        DateUtilities.Backport.Normalize(monday);
+        return monday;
+    }
+
     /**
      * Applies timetables to UI. Return true if successful
      * and false if the date requested from the UI would not
@@ -152,8 +146,9 @@ public class WeekFragment extends Fragment {
         actTitle.setText(new SimpleDateFormat("MMM yyyy", Locale.GERMANY).format(day.getTime()));
         actTitle.setOnClickListener(v -> pickWeek(view, getActivity()));
 
-        ArrayList<BackportAppointment> weekAppointments = DateUtilities.Backport.GetWeekAppointments(
-                day, TimetableManager.getInstance().getGlobalsAsList());
+        final AppointmentIndex index = TimetableManager.getInstance().getGlobalsIndex();
+        final int monday = EpochDays.of(day);
+        ArrayList<BackportAppointment> weekAppointments = new ArrayList<>(index.week(monday));
         Log.d("TTM", weekAppointments.size() + " week appointments for: " + formattedDate);
         if (weekAppointments.size() == 0 && firstTry) {
             return false;
@@ -216,7 +211,7 @@ public class WeekFragment extends Fragment {
 
             // Body
             dayElement = new WeekdayView(fExtensionFirst, fExtensionSecond, body,
-                    DateUtilities.Backport.GetAppointmentsOfDay(day, weekAppointments), i == 4,
+                    index, monday + i, i == 4,
                     new SimpleDateFormat("EE dd.MM.yyyy", Locale.GERMANY).format(day.getTime()), dayNames[i]);
             dayElement.setBackgroundColor(Color.parseColor("#FAFAFA"));
 
@@ -268,7 +263,7 @@ public class WeekFragment extends Fragment {
         TimetableManager.getInstance().loadOfflineGlobals(activity.getApplication(), () -> {
             Log.i("TTM", "Successfully loaded offline globals for week fragment.");
             applyGlobalContent(true, false, rootView, activity);
-        });
+        }, displayedMonday());
 
         return rootView;
     }
@@ -0,0 +1,11 @@
+package dhbw.timetable.services;
+
+/**
+ * Source of the current time in millis, so the sync schedule can be driven by a fake clock
+ */
+interface Clock {
+
+    Clock SYSTEM = System::currentTimeMillis;
+
+    long now();
+}
@@ -0,0 +1,23 @@
+package dhbw.timetable.services;
+
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import dhbw.timetable.data.ConnectivityMonitor;
+
+/**
+ * Runs the background sync on devices without job scheduler, once a network is available
+ */
+public class SyncAlarmReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final Application application = (Application) context.getApplicationContext();
+        ConnectivityMonitor.getInstance(application).runWhenOnline("background-sync",
+                () -> SyncScheduler.run(application, Clock.SYSTEM, retry -> {
+                    if (retry) SyncScheduler.scheduleRetry(application);
+                }));
+    }
+}
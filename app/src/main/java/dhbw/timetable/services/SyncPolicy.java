@@ -0,0 +1,112 @@
+package dhbw.timetable.services;
+
+import android.content.SharedPreferences;
+
+/**
+ * Decides when the background sync runs. A run is due one interval after the last
+ * successful sync, a run the system starts up to {@link #flexOf} early to batch it with
+ * other wakeups counts as due. After a failure every run is due and the retry is
+ * scheduled with exponential backoff from {@link #INITIAL_BACKOFF} up to
+ * {@link #MAX_BACKOFF}, the policy the job scheduler applies to rescheduled jobs.
+ */
+final class SyncPolicy {
+
+    // Shortest period and flex of a periodic job
+    static final long MIN_INTERVAL = 15 * 60 * 1000L;
+    static final long MIN_FLEX = 5 * 60 * 1000L;
+    static final long INITIAL_BACKOFF = 30 * 1000L;
+    static final long MAX_BACKOFF = 5 * 60 * 60 * 1000L;
+    // Millis per unit of the values of sync_frequency_list
+    private static final long PREFERENCE_UNIT = 360000L;
+
+    private final Clock clock;
+    private final long interval;
+    private long lastSuccess, lastAttempt;
+    private int failures;
+
+    SyncPolicy(Clock clock, long interval, long lastSuccess, long lastAttempt, int failures) {
+        this.clock = clock;
+        this.interval = interval;
+        this.lastSuccess = lastSuccess;
+        this.lastAttempt = lastAttempt;
+        this.failures = failures;
+    }
+
+    static SyncPolicy load(SharedPreferences prefs, long interval, Clock clock) {
+        return new SyncPolicy(clock, interval, prefs.getLong("syncLastSuccess", 0),
+                prefs.getLong("syncLastAttempt", 0), prefs.getInt("syncFailures", 0));
+    }
+
+    void save(SharedPreferences prefs) {
+        prefs.edit()
+                .putLong("syncLastSuccess", lastSuccess)
+                .putLong("syncLastAttempt", lastAttempt)
+                .putInt("syncFailures", failures)
+                .apply();
+    }
+
+    /**
+     * @return period in millis for a value of sync_frequency_list, -1 for manual sync
+     */
+    static long intervalOf(String preference) {
+        final double value;
+        try {
+            value = Double.parseDouble(preference);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        if (value < 0) return -1;
+        return Math.max(MIN_INTERVAL, Math.round(value * PREFERENCE_UNIT));
+    }
+
+    /**
+     * @return how much earlier than the interval a run may start
+     */
+    static long flexOf(long interval) {
+        return Math.max(MIN_FLEX, interval / 4);
+    }
+
+    /**
+     * @return delay of the retry after the given number of consecutive failures
+     */
+    static long backoff(int failures) {
+        // Doubles each time, large shifts would overflow
+        if (failures <= 0) return 0;
+        if (failures > 20) return MAX_BACKOFF;
+        return Math.min(MAX_BACKOFF, INITIAL_BACKOFF << (failures - 1));
+    }
+
+    boolean isDue() {
+        if (interval < 0) return false;
+        final long now = clock.now();
+        // A clock set back counts as due
+        return failures > 0 || now < lastSuccess || now >= lastSuccess + interval - flexOf(interval);
+    }
+
+    /**
+     * @return when the next run is due, the retry after a failure
+     */
+    long getNextRun() {
+        return failures > 0 ? lastAttempt + backoff(failures) : lastSuccess + interval;
+    }
+
+    long onSuccess() {
+        lastSuccess = lastAttempt = clock.now();
+        failures = 0;
+        return getNextRun();
+    }
+
+    long onFailure() {
+        lastAttempt = clock.now();
+        failures++;
+        return getNextRun();
+    }
+
+    long getInterval() {
+        return interval;
+    }
+
+    int getFailures() {
+        return failures;
+    }
+}
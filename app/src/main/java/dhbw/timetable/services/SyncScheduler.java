@@ -0,0 +1,165 @@
+package dhbw.timetable.services;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.Application;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import dhbw.timetable.R;
+import dhbw.timetable.data.TimetableManager;
+
+/**
+ * Schedules the background sync with the frequency of the preferences. From Lollipop on it
+ * is a periodic job that only runs with a network, is batched by the system with other
+ * work and retried with exponential backoff. Before, an inexact alarm that does not wake
+ * the device is used and the backoff of {@link SyncPolicy} is applied by a one-shot alarm.
+ */
+public final class SyncScheduler {
+
+    private static final int JOB_ID = 1;
+    private static final int REQUEST_PERIODIC = 0, REQUEST_RETRY = 1;
+
+    interface Completion {
+        void onComplete(boolean retry);
+    }
+
+    private SyncScheduler() {
+    }
+
+    /**
+     * Schedules the background sync for the frequency in the preferences, cancels it for
+     * manual sync. A schedule that is already in place is kept.
+     */
+    public static void schedule(Context context) {
+        final long interval = getInterval(context);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJob(context, interval);
+        } else {
+            scheduleAlarm(context, interval);
+        }
+    }
+
+    /**
+     * Runs the background sync if it is due and records the outcome
+     *
+     * @return whether a sync was started, the completion is called once when it ends
+     */
+    static boolean run(final Application application, Clock clock, final Completion completion) {
+        final SharedPreferences prefs = application.getSharedPreferences(
+                application.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
+        if (!prefs.getBoolean("onboardingDone", false)) {
+            Log.i("SYNC", "No timetable to sync yet");
+            return false;
+        }
+        final SyncPolicy policy = SyncPolicy.load(prefs, getInterval(application), clock);
+        if (!policy.isDue()) {
+            Log.i("SYNC", "Skipped background sync, next one due at " + policy.getNextRun());
+            return false;
+        }
+        // Joins a sync that is running already. One queued while offline calls back again later.
+        final boolean[] done = {false};
+        TimetableManager.getInstance().updateGlobals(application, () -> {
+            policy.onSuccess();
+            policy.save(prefs);
+            Log.i("SYNC", "Background sync finished");
+            if (!done[0]) {
+                done[0] = true;
+                completion.onComplete(false);
+            }
+        }, errMSG -> {
+            final long retry = policy.onFailure();
+            policy.save(prefs);
+            Log.e("SYNC", "Background sync FAILED " + policy.getFailures() + " times, retry at " + retry + ": " + errMSG);
+            if (!done[0]) {
+                done[0] = true;
+                completion.onComplete(true);
+            }
+        });
+        Log.i("SYNC", "Background sync now running");
+        return true;
+    }
+
+    /**
+     * Schedules the retry of a failed sync for when its backoff has passed
+     */
+    static void scheduleRetry(Context context) {
+        final AlarmManager manager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (manager == null) {
+            Log.w("SYNC", "Can't access system service AlarmManager");
+            return;
+        }
+        final SyncPolicy policy = SyncPolicy.load(context.getSharedPreferences(
+                context.getString(R.string.preference_file_key), Context.MODE_PRIVATE),
+                getInterval(context), Clock.SYSTEM);
+        manager.set(AlarmManager.RTC, policy.getNextRun(), getAlarm(context, REQUEST_RETRY));
+    }
+
+    private static long getInterval(Context context) {
+        return SyncPolicy.intervalOf(PreferenceManager.getDefaultSharedPreferences(context)
+                .getString("sync_frequency_list", "-1"));
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context, long interval) {
+        final JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            Log.w("SYNC", "Can't access system service JobScheduler");
+            return;
+        }
+        if (interval < 0) {
+            scheduler.cancel(JOB_ID);
+            Log.i("SYNC", "Background sync disabled");
+            return;
+        }
+        // Scheduling again would restart the period
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID && job.getIntervalMillis() == interval) return;
+        }
+        JobInfo.Builder job = new JobInfo.Builder(JOB_ID, new ComponentName(context, TimetableSyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setBackoffCriteria(SyncPolicy.INITIAL_BACKOFF, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .setPersisted(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            job.setPeriodic(interval, SyncPolicy.flexOf(interval));
+        } else {
+            job.setPeriodic(interval);
+        }
+        if (scheduler.schedule(job.build()) == JobScheduler.RESULT_SUCCESS) {
+            Log.i("SYNC", "Background sync scheduled every " + interval + "ms");
+        } else {
+            Log.e("SYNC", "Could not schedule background sync");
+        }
+    }
+
+    private static void scheduleAlarm(Context context, long interval) {
+        final AlarmManager manager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (manager == null) {
+            Log.w("SYNC", "Can't access system service AlarmManager");
+            return;
+        }
+        final PendingIntent periodic = getAlarm(context, REQUEST_PERIODIC);
+        if (interval < 0) {
+            manager.cancel(periodic);
+            manager.cancel(getAlarm(context, REQUEST_RETRY));
+            Log.i("SYNC", "Background sync disabled");
+            return;
+        }
+        // Delivered when the device is awake anyway, together with the alarms of other apps
+        manager.setInexactRepeating(AlarmManager.RTC, System.currentTimeMillis() + interval, interval, periodic);
+        Log.i("SYNC", "Background sync scheduled every " + interval + "ms");
+    }
+
+    private static PendingIntent getAlarm(Context context, int requestCode) {
+        return PendingIntent.getBroadcast(context, requestCode,
+                new Intent(context, SyncAlarmReceiver.class), PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
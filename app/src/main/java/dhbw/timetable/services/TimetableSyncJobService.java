@@ -0,0 +1,27 @@
+package dhbw.timetable.services;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Runs the periodic background sync scheduled by {@link SyncScheduler}
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class TimetableSyncJobService extends JobService {
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        Log.i("SYNC", "Background sync job started");
+        return SyncScheduler.run(getApplication(), Clock.SYSTEM, retry -> jobFinished(params, retry));
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The network was lost, retry. A sync that still finishes makes the retry a no-op.
+        Log.i("SYNC", "Background sync job stopped");
+        return true;
+    }
+}
@@ -6,11 +6,8 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.view.View;
 
-import java.util.ArrayList;
-import java.util.Calendar;
-
 import dhbw.timetable.R;
-import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.data.AppointmentIndex;
 
 /**
  * Created by Hendrik Ulbrich (C) 2017
@@ -19,13 +16,15 @@ public class TodaySummaryRect extends View {
 
     private Paint paint = new Paint();
     private View pLayout;
-    private ArrayList<ArrayList<BackportAppointment>> wData;
+    private AppointmentIndex index;
+    private int monday;
     private int min, max;
 
-    public TodaySummaryRect(int min, int max, View parentLayout, ArrayList<ArrayList<BackportAppointment>> appointments) {
+    public TodaySummaryRect(int min, int max, View parentLayout, AppointmentIndex index, int monday) {
         super(parentLayout.getContext());
         pLayout = parentLayout;
-        this.wData = appointments;
+        this.index = index;
+        this.monday = monday;
         this.min = min;
         this.max = max;
     }
@@ -44,12 +43,11 @@ public class TodaySummaryRect extends View {
     private void drawWeek(Canvas canvas) {
         final int hMargin = 3;
         float aWidth = pLayout.getMeasuredWidth() / 5;
-        for (int i = 0; i < wData.size(); i++) {
-            for (BackportAppointment a : wData.get(i)) {
-                float startOnMin = a.getStartDate().get(Calendar.HOUR_OF_DAY) * 60
-                        + a.getStartDate().get(Calendar.MINUTE);
-                float endOnMin = a.getEndDate().get(Calendar.HOUR_OF_DAY) * 60
-                        + a.getEndDate().get(Calendar.MINUTE);
+        for (int i = 0; i < 5; i++) {
+            final int end = index.offsetOf(monday + i + 1);
+            for (int a = index.offsetOf(monday + i); a < end; a++) {
+                float startOnMin = index.getStartMinute(a);
+                float endOnMin = index.getEndMinute(a);
                 float startY = ((startOnMin - min) * pLayout.getMeasuredHeight()) / (max - min);
                 float startX = aWidth * i;
                 float aHeight = ((endOnMin - min) * pLayout.getMeasuredHeight()) / (max - min);
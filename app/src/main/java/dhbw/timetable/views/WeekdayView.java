@@ -15,17 +15,16 @@ import android.text.TextUtils;
 import android.util.Log;
 import android.util.TypedValue;
 import android.view.View;
-import android.widget.Toast;
 
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.List;
 
 import dhbw.timetable.ActivityHelper;
 import dhbw.timetable.DayDetailsActivity;
 import dhbw.timetable.R;
-import dhbw.timetable.data.TimetableManager;
+import dhbw.timetable.data.AppointmentIndex;
+import dhbw.timetable.data.DayIntervals;
 import dhbw.timetable.rapla.data.event.BackportAppointment;
 
 /**
@@ -41,23 +40,25 @@ public class WeekdayView extends View {
     private Paint paint = new Paint();
     private TextPaint textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
     private View parentLayout;
-    private LinkedHashSet<BackportAppointment> dayAppointments;
+    private final List<BackportAppointment> dayAppointments;
+    // Positions are the ones of dayAppointments
+    private final DayIntervals intervals;
     private float scale;
     private int min, max, shiftX_max = 0;
     private boolean isFriday, fit = false;
 
-    public WeekdayView(int min, int max, final View parentLayout, final ArrayList<BackportAppointment> appointments, boolean isFriday, final String detailsDate, final String dayName) {
+    public WeekdayView(int min, int max, final View parentLayout, final AppointmentIndex index, final int epochDay, boolean isFriday, final String detailsDate, final String dayName) {
         super(parentLayout.getContext());
         this.min = min;
         this.max = max;
         this.isFriday = isFriday;
         this.parentLayout = parentLayout;
-        dayAppointments = new LinkedHashSet<>();
-        dayAppointments.addAll(appointments);
+        dayAppointments = index.day(epochDay);
+        intervals = index.intervals(epochDay);
         this.scale = getResources().getDisplayMetrics().density;
         this.setOnClickListener(v -> {
             Activity activity = ActivityHelper.getActivity();
-            if (activity != null && !TimetableManager.getInstance().isRunning()) {
+            if (activity != null) {
                 StringBuilder sb = new StringBuilder("");
                 for (BackportAppointment ap : dayAppointments) {
                     Log.i("DEBUG", "" + ap);
@@ -74,8 +75,6 @@ public class WeekdayView extends View {
                 detailsIntent.putExtra("day", "" + detailsDate);
                 detailsIntent.putExtra("agenda", sb.toString());
                 activity.startActivity(detailsIntent);
-            } else {
-                Toast.makeText(activity, "I'm currently busy, sorry!", Toast.LENGTH_SHORT).show();
             }
         });
         generateRectangles();
@@ -109,30 +108,14 @@ public class WeekdayView extends View {
     }
 
     private void generateRectangles() {
-        for (BackportAppointment a : dayAppointments) {
+        // Overlapping appointments are in different lanes, each lane is shifted one unit to the right
+        for (int i = 0; i < dayAppointments.size(); i++) {
             // Default, left aligned (not shifted) rectangle
-            RectF a_rect = layoutRectangle(a);
-
-            // Check for each rects if intersection is present
-            boolean check_intersect = true;
-            int i = 0;
-            start_intersection_check:
-            while (check_intersect) {
-                for (RectF r : eventRectangles.values()) {
-                    if (r.contains(a_rect) || RectF.intersects(r, a_rect)) {
-                        if (++i > shiftX_max) shiftX_max = i;
-                        // shift one unit to the right and start again
-                        a_rect.offset(dp(2 * X_OFFSET + X_WIDTH), 0);
-                        continue start_intersection_check;
-                    } // else check next
-                }
-
-                // finish
-                check_intersect = false;
-            }
-
-            eventRectangles.put(a, a_rect);
+            RectF a_rect = layoutRectangle(dayAppointments.get(i));
+            a_rect.offset(dp(2 * X_OFFSET + X_WIDTH) * intervals.getLane(i), 0);
+            eventRectangles.put(dayAppointments.get(i), a_rect);
         }
+        shiftX_max = Math.max(0, intervals.getLaneCount() - 1);
     }
 
     private void fitRectsToParent() {
@@ -0,0 +1,8 @@
+package dhbw.timetable;
+
+/**
+ * Category of tests that measure time. Their results depend on the machine, so they only
+ * run with {@code gradlew test -Pbenchmarks}.
+ */
+public interface Benchmark {
+}
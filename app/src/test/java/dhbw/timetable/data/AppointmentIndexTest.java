@@ -0,0 +1,44 @@
+package dhbw.timetable.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class AppointmentIndexTest {
+
+    @Test
+    public void sortsByStartAndKeepsTheOrderOfParallelLectures() {
+        Random random = new Random(1);
+        for (int run = 0; run < 200; run++) {
+            List<ArrayList<BackportAppointment>> weeks = new ArrayList<>();
+            ArrayList<BackportAppointment> all = new ArrayList<>();
+            for (int w = random.nextInt(4); w >= 0; w--) {
+                ArrayList<BackportAppointment> week = new ArrayList<>();
+                for (int n = random.nextInt(30); n > 0; n--) {
+                    final int start = 8 + random.nextInt(4);
+                    week.add(new BackportAppointment(String.format("%02d:00-%02d:30", start, start + 1),
+                            Semester.date(Semester.FIRST_MONDAY + 7 * random.nextInt(3) + random.nextInt(5)),
+                            "Lecture " + n, "", ""));
+                }
+                weeks.add(week);
+                all.addAll(week);
+            }
+            // Stable as well
+            Collections.sort(all, (a, b) -> Long.compare(a.getStartDate().getTimeInMillis(), b.getStartDate().getTimeInMillis()));
+
+            final AppointmentIndex index = AppointmentIndex.of(weeks);
+            assertEquals(all.size(), index.size());
+            for (int i = 0; i < all.size(); i++) {
+                assertSame(all.get(i), index.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package dhbw.timetable.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class AppointmentPoolTest {
+
+    @Test
+    public void unchangedAppointmentsStayTheSameInstance() {
+        AppointmentPool pool = new AppointmentPool();
+        Map<TimelessDate, ArrayList<BackportAppointment>> first = Semester.weeks(4, 1);
+        final BackportAppointment original = first.values().iterator().next().get(0);
+        pool.canonicalize(first);
+        // New appointments become canonical as they are
+        assertSame(original, first.values().iterator().next().get(0));
+        final TimetableState state = TimetableState.of(first);
+        pool.retain(TimetableState.EMPTY, state);
+        assertEquals(80, pool.size());
+
+        Map<TimelessDate, ArrayList<BackportAppointment>> second = Semester.weeks(4, 1);
+        assertEquals(80, pool.canonicalize(second));
+        assertSame(original, second.values().iterator().next().get(0));
+    }
+
+    @Test
+    public void stringsAreShared() {
+        AppointmentPool pool = new AppointmentPool();
+        Map<TimelessDate, ArrayList<BackportAppointment>> weeks = Semester.weeks(2, 1);
+        ArrayList<BackportAppointment> week = weeks.values().iterator().next();
+        BackportAppointment a = week.get(0);
+        BackportAppointment b = week.get(0);
+        for (ArrayList<BackportAppointment> w : weeks.values()) {
+            for (BackportAppointment c : w) {
+                if (c != a && c.getTitle().equals(a.getTitle())) b = c;
+            }
+        }
+        assertNotSame(a, b);
+        assertNotSame(a.getTitle(), b.getTitle());
+        pool.canonicalize(weeks);
+        assertSame(canonical(weeks, a).getTitle(), canonical(weeks, b).getTitle());
+    }
+
+    @Test
+    public void replacedAndDroppedWeeksAreForgotten() {
+        AppointmentPool pool = new AppointmentPool();
+        Map<TimelessDate, ArrayList<BackportAppointment>> weeks = Semester.weeks(4, 1);
+        pool.canonicalize(weeks);
+        final TimetableState full = TimetableState.of(weeks);
+        pool.retain(TimetableState.EMPTY, full);
+
+        // Merging nothing keeps everything
+        pool.retain(full, full.with(Collections.<TimelessDate, ArrayList<BackportAppointment>>emptyMap()));
+        assertEquals(80, pool.size());
+
+        final int firstMonday = full.getMondays()[0];
+        final TimetableState fewer = full.without(Collections.singletonList(firstMonday));
+        pool.retain(full, fewer);
+        assertEquals(60, pool.size());
+
+        // The second week again, with one lecture changed
+        Map<TimelessDate, ArrayList<BackportAppointment>> changed = new HashMap<>();
+        ArrayList<BackportAppointment> week = new ArrayList<>(fewer.getWeek(firstMonday + 7));
+        week.set(0, new BackportAppointment("08:15-09:45", Semester.date(firstMonday + 7), "Ethik", "Prof. Y", "Aula"));
+        changed.put(Semester.date(firstMonday + 7), week);
+        pool.canonicalize(changed);
+        final TimetableState next = fewer.with(changed);
+        pool.retain(fewer, next);
+        assertEquals(60, pool.size());
+
+        pool.retain(next, TimetableState.EMPTY);
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void retainsOutOfOrderEndUpConsistent() {
+        AppointmentPool pool = new AppointmentPool();
+        Map<TimelessDate, ArrayList<BackportAppointment>> weeks = Semester.weeks(3, 1);
+        pool.canonicalize(weeks);
+        final TimetableState s1 = TimetableState.of(weeks);
+        final TimetableState s2 = s1.without(Collections.singletonList(s1.getMondays()[0]));
+        // Second transition retained before the first
+        pool.retain(s1, s2);
+        pool.retain(TimetableState.EMPTY, s1);
+        assertEquals(40, pool.size());
+    }
+
+    @Test
+    public void unpublishedWeeksAreDropped() {
+        AppointmentPool pool = new AppointmentPool();
+        pool.canonicalize(Semester.weeks(2, 1));
+        pool.retain(TimetableState.EMPTY, TimetableState.EMPTY);
+        assertEquals(0, pool.size());
+    }
+
+    private static BackportAppointment canonical(Map<TimelessDate, ArrayList<BackportAppointment>> weeks,
+                                                 BackportAppointment a) {
+        for (ArrayList<BackportAppointment> week : weeks.values()) {
+            for (BackportAppointment c : week) {
+                if (ContentHash.equal(a, c)) return c;
+            }
+        }
+        throw new AssertionError("Not found: " + a);
+    }
+}
@@ -0,0 +1,128 @@
+package dhbw.timetable.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeJournalTest {
+
+    private static final int MONDAY = EpochDays.of(new GregorianCalendar(2018, 0, 8));
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("journal", null);
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void replayKeepsTheOrderOfParallelLectures() throws Exception {
+        final BackportAppointment math = lecture("08:00-10:00", "Math", "A101");
+        final BackportAppointment physics = lecture("08:00-10:00", "Physics", "B202");
+        final BackportAppointment chemistry = lecture("10:00-12:00", "Chemistry", "C303");
+        final List<BackportAppointment> old = Arrays.asList(math, physics, chemistry);
+        // Room change of the first of two parallel lectures
+        final List<BackportAppointment> now = Arrays.asList(
+                lecture("08:00-10:00", "Math", "A102"), physics, chemistry);
+
+        ChangeJournal journal = new ChangeJournal(file);
+        assertTrue(journal.append(MONDAY, old, now) > 0);
+
+        assertOrder(now, replay(journal, old));
+        // Also after reading the journal back from disk
+        ChangeJournal loaded = new ChangeJournal(file);
+        loaded.load();
+        assertOrder(now, replay(loaded, old));
+    }
+
+    @Test
+    public void framesReplayOnTopOfEachOther() throws Exception {
+        final List<BackportAppointment> v1 = Arrays.asList(
+                lecture("08:00-10:00", "Math", "A101"), lecture("08:00-10:00", "Physics", "B202"));
+        final List<BackportAppointment> v2 = Arrays.asList(
+                lecture("08:00-10:00", "Math", "A101"), lecture("08:00-10:00", "Biology", "B202"),
+                lecture("08:00-10:00", "Physics", "B203"));
+        final List<BackportAppointment> v3 = Arrays.asList(
+                lecture("08:00-10:00", "Art", "A101"), lecture("08:00-10:00", "Biology", "B202"));
+
+        ChangeJournal journal = new ChangeJournal(file);
+        journal.append(MONDAY, v1, v2);
+        journal.append(MONDAY, v2, v3);
+        ChangeJournal loaded = new ChangeJournal(file);
+        loaded.load();
+        assertOrder(v3, replay(loaded, v1));
+    }
+
+    @Test
+    public void reorderedWeekIsNotJournaled() throws Exception {
+        final BackportAppointment math = lecture("08:00-10:00", "Math", "A101");
+        final BackportAppointment physics = lecture("08:00-10:00", "Physics", "B202");
+
+        ChangeJournal journal = new ChangeJournal(file);
+        assertEquals(-1, journal.append(MONDAY, Arrays.asList(math, physics), Arrays.asList(physics, math)));
+        assertEquals(0, journal.length());
+        assertEquals(0, journal.append(MONDAY, Arrays.asList(math, physics), Arrays.asList(math, physics)));
+    }
+
+    @Test
+    public void randomEditsWithDuplicatesReplay() throws Exception {
+        final String[] titles = {"Math", "Physics", "Art"};
+        Random random = new Random(1);
+        for (int run = 0; run < 300; run++) {
+            List<BackportAppointment> old = new ArrayList<>();
+            for (int n = random.nextInt(8); n > 0; n--) {
+                // Few distinct lectures, so equal ones are common
+                old.add(lecture(String.format("%02d:00-%02d:00", 8 + 2 * random.nextInt(3), 10 + 2 * random.nextInt(3)),
+                        titles[random.nextInt(titles.length)], "A101"));
+            }
+            List<BackportAppointment> now = new ArrayList<>(old);
+            for (int edits = random.nextInt(4); edits > 0; edits--) {
+                if (!now.isEmpty() && random.nextBoolean()) {
+                    now.remove(random.nextInt(now.size()));
+                } else {
+                    now.add(random.nextInt(now.size() + 1), lecture("12:00-14:00", titles[random.nextInt(titles.length)], "B202"));
+                }
+            }
+
+            file.delete();
+            ChangeJournal journal = new ChangeJournal(file);
+            if (journal.append(MONDAY, old, now) < 0) continue;
+            assertOrder(now, replay(journal, old));
+        }
+    }
+
+    private static List<BackportAppointment> replay(ChangeJournal journal, List<BackportAppointment> base) {
+        List<BackportAppointment> week = new ArrayList<>(base);
+        journal.apply(MONDAY, week);
+        return week;
+    }
+
+    private static void assertOrder(List<BackportAppointment> expected, List<BackportAppointment> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+    }
+
+    private static BackportAppointment lecture(String time, String title, String room) {
+        return new BackportAppointment(time, new GregorianCalendar(2018, 0, 8), title, "Prof. X", room);
+    }
+}
@@ -0,0 +1,78 @@
+package dhbw.timetable.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DayIntervalsTest {
+
+    @Test
+    public void parallelLecturesTakeTheLowestFreeLane() {
+        // 08:00-10:00, 08:00-09:00, 09:00-11:00, 10:00-12:00
+        DayIntervals day = DayIntervals.of(new int[]{480, 480, 540, 600}, new int[]{600, 540, 660, 720});
+        assertEquals(0, day.getLane(0));
+        assertEquals(1, day.getLane(1));
+        assertEquals(1, day.getLane(2));
+        assertEquals(0, day.getLane(3));
+        assertEquals(2, day.getLaneCount());
+        assertEquals(2, day.getMaxConcurrency());
+        assertArrayEquals(new int[]{0, 2}, day.overlapping(540, 600));
+    }
+
+    @Test
+    public void emptyIntervalsOnlyCollideWithIntervalsAcrossThem() {
+        // 08:00-10:00, 09:00-09:00, 10:00-10:00
+        DayIntervals day = DayIntervals.of(new int[]{480, 540, 600}, new int[]{600, 540, 600});
+        assertEquals(1, day.getLane(1));
+        assertEquals(0, day.getLane(2));
+        assertEquals(1, day.getMaxConcurrency());
+        assertEquals(0, day.overlapping(500, 500).length);
+    }
+
+    @Test
+    public void matchesABruteForceScan() {
+        Random random = new Random(1);
+        for (int run = 0; run < 2000; run++) {
+            final int size = random.nextInt(12);
+            int[] starts = new int[size], ends = new int[size];
+            for (int i = 0; i < size; i++) {
+                starts[i] = 480 + random.nextInt(40) * 15;
+                ends[i] = starts[i] + random.nextInt(12) * 15;
+            }
+            DayIntervals day = DayIntervals.of(starts, ends);
+
+            int max = 0;
+            for (int minute = 0; minute < 1440; minute++) {
+                int running = 0;
+                for (int i = 0; i < size; i++) {
+                    if (starts[i] <= minute && minute < ends[i]) running++;
+                }
+                assertEquals(running, day.concurrencyAt(minute));
+                max = Math.max(max, running);
+            }
+            assertEquals(max, day.getMaxConcurrency());
+
+            final int from = 480 + random.nextInt(50) * 10, to = from + random.nextInt(20) * 10;
+            int[] expected = new int[size];
+            int found = 0;
+            for (int i = 0; i < size; i++) {
+                if (ends[i] > starts[i] && starts[i] < to && ends[i] > from && to > from) expected[found++] = i;
+            }
+            int[] actual = day.overlapping(from, to);
+            Arrays.sort(actual);
+            assertArrayEquals(Arrays.copyOf(expected, found), actual);
+
+            for (int i = 0; i < size; i++) {
+                for (int j = i + 1; j < size; j++) {
+                    final boolean overlap = starts[i] < ends[j] && starts[j] < ends[i];
+                    assertTrue(!overlap || day.getLane(i) != day.getLane(j));
+                }
+            }
+        }
+    }
+}
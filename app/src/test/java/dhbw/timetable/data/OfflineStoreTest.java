@@ -0,0 +1,137 @@
+package dhbw.timetable.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OfflineStoreTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("store", null);
+        assertTrue(dir.delete());
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void failedWriteIsRetried() throws Exception {
+        OfflineStore store = OfflineStore.open(dir);
+        store.retryMillis = 20;
+        final Map<TimelessDate, ArrayList<BackportAppointment>> weeks = Semester.weeks(1, 1);
+        final int monday = Semester.FIRST_MONDAY;
+        // Takes the place of the temp file of the week
+        final File blocker = new File(dir, "w" + monday + ".tmp");
+        assertTrue(blocker.mkdir());
+
+        final CountDownLatch saved = new CountDownLatch(1);
+        store.saveAsync(weeks, saved::countDown, null);
+        assertFalse(saved.await(100, TimeUnit.MILLISECONDS));
+        assertTrue(blocker.delete());
+        assertTrue(saved.await(5, TimeUnit.SECONDS));
+
+        Map<TimelessDate, ArrayList<BackportAppointment>> read = new HashMap<>();
+        OfflineStore.open(dir).read(monday, new SnapshotReader.Collector(read));
+        assertEquals(weeks.values().iterator().next().size(), read.values().iterator().next().size());
+    }
+
+    @Test
+    public void closeRunsAfterTheQueuedSavesAndDropsLaterOnes() throws Exception {
+        final OfflineStore store = OfflineStore.open(dir);
+        final Map<TimelessDate, ArrayList<BackportAppointment>> weeks = Semester.weeks(2, 1);
+        store.saveAsync(Collections.singletonMap(Semester.date(Semester.FIRST_MONDAY),
+                weeks.get(Semester.date(Semester.FIRST_MONDAY))), null);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final boolean[] written = new boolean[1];
+        store.close(() -> {
+            written[0] = new File(dir, "w" + Semester.FIRST_MONDAY).exists();
+            closed.countDown();
+        });
+        store.saveAsync(weeks, null);
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertTrue(written[0]);
+        assertFalse(store.hasWeek(Semester.FIRST_MONDAY + 7));
+    }
+
+    @Test
+    public void unreadableWeekIsDroppedByTheCompaction() throws Exception {
+        OfflineStore store = OfflineStore.open(dir);
+        final int kept = Semester.FIRST_MONDAY, damaged = kept + 7;
+        assertEquals(2, store.save(renamed(Semester.weeks(2, 1), "v0")));
+        // Journaled, then the week file under the journal gets damaged
+        assertEquals(1, store.save(renamed(week(Semester.weeks(2, 1), damaged), "v1")));
+        RandomAccessFile file = new RandomAccessFile(new File(dir, "w" + damaged), "rw");
+        try {
+            file.seek(file.length() / 2);
+            file.write(~file.read());
+        } finally {
+            file.close();
+        }
+
+        // Journal changes of the other week until the journal is compacted
+        for (int version = 1; version < 1000 && store.hasWeek(damaged); version++) {
+            store.save(renamed(week(Semester.weeks(2, 1), kept), "v" + version));
+        }
+        assertFalse(store.hasWeek(damaged));
+        assertFalse(OfflineStore.open(dir).hasWeek(damaged));
+        assertTrue(store.hasWeek(kept));
+
+        // The same content as before is written again
+        assertEquals(1, store.save(renamed(week(Semester.weeks(2, 1), damaged), "v1")));
+        Map<TimelessDate, ArrayList<BackportAppointment>> read = new HashMap<>();
+        OfflineStore.open(dir).read(damaged, new SnapshotReader.Collector(read));
+        assertEquals("Lecture v1", read.values().iterator().next().get(0).getTitle().substring(0, 10));
+    }
+
+    private static Map<TimelessDate, ArrayList<BackportAppointment>> week(
+            Map<TimelessDate, ArrayList<BackportAppointment>> weeks, int monday) {
+        return Collections.singletonMap(Semester.date(monday), weeks.get(Semester.date(monday)));
+    }
+
+    /**
+     * @return the weeks with every title prefixed by the version
+     */
+    private static Map<TimelessDate, ArrayList<BackportAppointment>> renamed(
+            Map<TimelessDate, ArrayList<BackportAppointment>> weeks, String version) {
+        Map<TimelessDate, ArrayList<BackportAppointment>> renamed = new HashMap<>();
+        for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : weeks.entrySet()) {
+            ArrayList<BackportAppointment> lectures = new ArrayList<>();
+            for (BackportAppointment a : week.getValue()) {
+                lectures.add(new BackportAppointment(SnapshotFormat.timeRange(EpochDays.minuteOfDay(a.getStartDate()),
+                        EpochDays.minuteOfDay(a.getEndDate())), Semester.date(EpochDays.of(a.getStartDate())),
+                        "Lecture " + version + " " + a.getTitle(), a.getPersons(), a.getResources()));
+            }
+            renamed.put(week.getKey(), lectures);
+        }
+        return renamed;
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,74 @@
+package dhbw.timetable.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+
+/**
+ * Synthetic timetable of a course: four lectures a day out of a fixed set of courses, each
+ * always with the same lecturer and room, like the weeks the importer delivers.
+ */
+final class Semester {
+
+    static final int FIRST_MONDAY = EpochDays.of(new GregorianCalendar(2018, 0, 8));
+
+    private static final String[] COURSES = {
+            "Mathematik II", "Theoretische Informatik", "Programmieren", "Datenbanken",
+            "Rechnernetze", "Technisches Englisch", "Betriebswirtschaftslehre", "Software Engineering",
+            "Digitaltechnik", "Rechnerarchitekturen", "Statistik", "Projektmanagement"};
+
+    private Semester() {
+    }
+
+    /**
+     * @return the given number of weeks from {@link #FIRST_MONDAY} on, the same for the same seed
+     */
+    static Map<TimelessDate, ArrayList<BackportAppointment>> weeks(int count, long seed) {
+        Random random = new Random(seed);
+        Map<TimelessDate, ArrayList<BackportAppointment>> weeks = new LinkedHashMap<>();
+        for (int w = 0; w < count; w++) {
+            final int monday = FIRST_MONDAY + 7 * w;
+            ArrayList<BackportAppointment> week = new ArrayList<>();
+            for (int day = 0; day < 5; day++) {
+                for (int slot = 0; slot < 4; slot++) {
+                    final int hour = 8 + 2 * slot;
+                    final int course = random.nextInt(COURSES.length);
+                    // Fresh instances, as every download creates them
+                    week.add(new BackportAppointment(
+                            String.format("%02d:15-%02d:45", hour, hour + 1), date(monday + day),
+                            new String(COURSES[course]), "Prof. Dr. Lecturer " + course,
+                            "Raum " + (course / 4 + 1) + "." + (100 + course)));
+                }
+            }
+            weeks.put(date(monday), week);
+        }
+        return weeks;
+    }
+
+    static TimelessDate date(int epochDay) {
+        TimelessDate date = new TimelessDate();
+        EpochDays.apply(epochDay, date);
+        return date;
+    }
+
+    /**
+     * @return median of the run times in nanoseconds, after as many warm-up runs
+     */
+    static long medianNanos(int runs, Runnable task) {
+        for (int i = 0; i < runs; i++) task.run();
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            final long start = System.nanoTime();
+            task.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[runs / 2];
+    }
+}
@@ -0,0 +1,159 @@
+package dhbw.timetable.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Size and load time of a semester in the text format, in version 1 week files with inline
+ * strings and in version 2 week files referring to the string table.
+ */
+public class SnapshotFormatBenchmark {
+
+    private static final int WEEKS = 26;
+
+    private File tableFile;
+    private Map<TimelessDate, ArrayList<BackportAppointment>> semester;
+
+    @Before
+    public void setUp() throws Exception {
+        tableFile = File.createTempFile("strings", null);
+        assertTrue(tableFile.delete());
+        semester = Semester.weeks(WEEKS, 7);
+    }
+
+    @After
+    public void tearDown() {
+        tableFile.delete();
+    }
+
+    @Test
+    public void stringTableShrinksAndSpeedsUpTheSemester() throws Exception {
+        final byte[] text = writeText(semester);
+        final ArrayList<byte[]> inline = new ArrayList<>();
+        final ArrayList<byte[]> referring = new ArrayList<>();
+        StringTable table = new StringTable(tableFile);
+        for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : semester.entrySet()) {
+            Map<TimelessDate, ArrayList<BackportAppointment>> single = Collections.singletonMap(week.getKey(), week.getValue());
+            inline.add(writeInlineStrings(single));
+            table.addAll(week.getValue());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            SnapshotFormat.write(single, out, table);
+            referring.add(out.toByteArray());
+        }
+        final long inlineBytes = total(inline);
+        final long referringBytes = total(referring) + tableFile.length();
+
+        final StringTable loaded = new StringTable(tableFile);
+        loaded.load();
+        assertSameWeeks(semester, readAll(Collections.singletonList(text), null));
+        assertSameWeeks(semester, readAll(inline, null));
+        Map<TimelessDate, ArrayList<BackportAppointment>> fromTable = readAll(referring, loaded);
+        assertSameWeeks(semester, fromTable);
+
+        final long textNanos = Semester.medianNanos(21, () -> readAll(Collections.singletonList(text), null));
+        final long inlineNanos = Semester.medianNanos(21, () -> readAll(inline, null));
+        final long referringNanos = Semester.medianNanos(21, () -> readAll(referring, loaded));
+        System.out.println(String.format("%d weeks: text %,d bytes in %d us, version 1 %,d bytes in %d us, "
+                        + "version 2 with string table %,d bytes in %d us, %d string instances with table, %d without",
+                WEEKS, text.length, textNanos / 1000, inlineBytes, inlineNanos / 1000,
+                referringBytes, referringNanos / 1000, stringInstances(fromTable),
+                stringInstances(readAll(inline, null))));
+
+        assertTrue("several-fold smaller", referringBytes * 4 < inlineBytes);
+        // Every distinct string is decoded once and shared
+        assertEquals(loaded.size(), stringInstances(fromTable));
+    }
+
+    private static Map<TimelessDate, ArrayList<BackportAppointment>> readAll(Iterable<byte[]> files, StringTable table) {
+        Map<TimelessDate, ArrayList<BackportAppointment>> weeks = new HashMap<>();
+        SnapshotReader.Collector collector = new SnapshotReader.Collector(weeks);
+        try {
+            for (byte[] file : files) {
+                SnapshotReader.read(new ByteArrayInputStream(file), table, collector);
+            }
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        assertEquals(0, collector.getErrors());
+        return weeks;
+    }
+
+    /**
+     * The tab separated text the app wrote before the binary format
+     */
+    private static byte[] writeText(Map<TimelessDate, ArrayList<BackportAppointment>> weeks) {
+        StringBuilder sb = new StringBuilder();
+        for (ArrayList<BackportAppointment> week : weeks.values()) {
+            for (BackportAppointment a : week) {
+                sb.append(a.toString()).append("\n");
+            }
+            sb.append("\n");
+        }
+        return sb.toString().getBytes();
+    }
+
+    private static byte[] writeInlineStrings(Map<TimelessDate, ArrayList<BackportAppointment>> weeks) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(SnapshotFormat.MAGIC);
+        out.writeShort(SnapshotFormat.VERSION_INLINE_STRINGS);
+        out.writeInt(weeks.size());
+        for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : weeks.entrySet()) {
+            out.writeInt(EpochDays.of(week.getKey()));
+            out.writeInt(week.getValue().size());
+            for (BackportAppointment a : week.getValue()) {
+                SnapshotFormat.writeAppointment(a, out);
+            }
+        }
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private static long total(Iterable<byte[]> files) {
+        long bytes = 0;
+        for (byte[] file : files) bytes += file.length;
+        return bytes;
+    }
+
+    private static int stringInstances(Map<TimelessDate, ArrayList<BackportAppointment>> weeks) {
+        IdentityHashMap<String, Boolean> strings = new IdentityHashMap<>();
+        for (ArrayList<BackportAppointment> week : weeks.values()) {
+            for (BackportAppointment a : week) {
+                strings.put(a.getTitle(), true);
+                strings.put(a.getPersons(), true);
+                strings.put(a.getResources(), true);
+            }
+        }
+        return strings.size();
+    }
+
+    private static void assertSameWeeks(Map<TimelessDate, ArrayList<BackportAppointment>> expected,
+                                        Map<TimelessDate, ArrayList<BackportAppointment>> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : expected.entrySet()) {
+            ArrayList<BackportAppointment> read = actual.get(week.getKey());
+            assertEquals(week.getValue().size(), read.size());
+            for (int i = 0; i < read.size(); i++) {
+                assertEquals(week.getValue().get(i).toString(), read.get(i).toString());
+            }
+        }
+    }
+}
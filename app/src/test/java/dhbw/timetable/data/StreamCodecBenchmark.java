@@ -0,0 +1,107 @@
+package dhbw.timetable.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decode time against bytes read of the week files of a small and a large sync range,
+ * written the way {@link OfflineStore} does with each codec. Storage is taken out of the
+ * measurement, instead the storage speed below which deflate loads faster is printed.
+ */
+public class StreamCodecBenchmark {
+
+    private File tableFile;
+
+    @Before
+    public void setUp() throws Exception {
+        tableFile = File.createTempFile("strings", null);
+        assertTrue(tableFile.delete());
+    }
+
+    @After
+    public void tearDown() {
+        tableFile.delete();
+    }
+
+    @Test
+    public void smallSyncRange() throws Exception {
+        measure(2);
+    }
+
+    @Test
+    public void largeSyncRange() throws Exception {
+        measure(26);
+    }
+
+    private void measure(int weeks) throws Exception {
+        Map<TimelessDate, ArrayList<BackportAppointment>> range = Semester.weeks(weeks, 11);
+        StringTable table = new StringTable(tableFile);
+        for (ArrayList<BackportAppointment> week : range.values()) table.addAll(week);
+
+        final ArrayList<byte[]> plain = encode(range, table, StreamCodec.IDENTITY);
+        final ArrayList<byte[]> deflated = encode(range, table, StreamCodec.DEFLATE);
+        assertEquals(weeks * 20, read(plain, table));
+        assertEquals(weeks * 20, read(deflated, table));
+
+        final long plainBytes = total(plain);
+        final long deflatedBytes = total(deflated);
+        final long plainNanos = Semester.medianNanos(51, () -> read(plain, table));
+        final long deflatedNanos = Semester.medianNanos(51, () -> read(deflated, table));
+        final long extraNanos = deflatedNanos - plainNanos;
+        System.out.println(String.format("%d weeks: identity %,d bytes in %d us, deflate %,d bytes in %d us, %s",
+                weeks, plainBytes, plainNanos / 1000, deflatedBytes, deflatedNanos / 1000,
+                extraNanos <= 0 ? "deflate decodes as fast"
+                        : String.format("deflate loads faster below %.1f MB/s storage speed",
+                        (plainBytes - deflatedBytes) * 1000.0 / extraNanos)));
+        assertTrue(deflatedBytes < plainBytes);
+    }
+
+    private static ArrayList<byte[]> encode(Map<TimelessDate, ArrayList<BackportAppointment>> range,
+                                            StringTable table, StreamCodec codec) throws IOException {
+        ArrayList<byte[]> files = new ArrayList<>();
+        for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : range.entrySet()) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            OutputStream os = codec.wrap(buffer);
+            SnapshotFormat.write(Collections.singletonMap(week.getKey(), week.getValue()), os, table);
+            os.close();
+            files.add(buffer.toByteArray());
+        }
+        return files;
+    }
+
+    private static int read(Iterable<byte[]> files, StringTable table) {
+        SnapshotReader.Collector collector = new SnapshotReader.Collector(new HashMap<TimelessDate, ArrayList<BackportAppointment>>());
+        int appointments = 0;
+        try {
+            for (byte[] file : files) {
+                appointments += SnapshotReader.read(StreamCodec.decode(new ByteArrayInputStream(file)), table, collector);
+            }
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return appointments;
+    }
+
+    private static long total(Iterable<byte[]> files) {
+        long bytes = 0;
+        for (byte[] file : files) bytes += file.length;
+        return bytes;
+    }
+}
@@ -0,0 +1,106 @@
+package dhbw.timetable.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StringTableTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("strings", null);
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void stringsSurviveReload() throws Exception {
+        StringTable table = new StringTable(file);
+        assertEquals(3, table.addAll(Arrays.asList(lecture("Math", "A101"))));
+        assertEquals(2, table.addAll(Arrays.asList(lecture("Physics", "B202"), lecture("Math", "A101"))));
+
+        StringTable loaded = new StringTable(file);
+        assertTrue(loaded.load());
+        assertEquals(5, loaded.size());
+        assertEquals("Math", loaded.get(0));
+        assertEquals(4, loaded.indexOf("B202"));
+    }
+
+    @Test
+    public void damagedStringDropsTheTable() throws Exception {
+        new StringTable(file).addAll(Arrays.asList(lecture("Math", "A101"), lecture("Physics", "B202")));
+        // Flip a character of "Prof. X", the second string
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(6 + 2 + 4 + 4 + 2 + 1);
+        raf.write('Q');
+        raf.close();
+
+        StringTable loaded = new StringTable(file);
+        assertFalse(loaded.load());
+        assertEquals(0, loaded.size());
+        // Starts over with a fresh table
+        loaded.addAll(Arrays.asList(lecture("Math", "A101")));
+        StringTable reloaded = new StringTable(file);
+        assertTrue(reloaded.load());
+        assertEquals(3, reloaded.size());
+    }
+
+    @Test
+    public void tornStringIsCutOff() throws Exception {
+        new StringTable(file).addAll(Arrays.asList(lecture("Math", "A101")));
+        final long complete = file.length();
+        FileOutputStream fos = new FileOutputStream(file, true);
+        fos.write(new byte[]{0, 10, 'P', 'h', 'y'});
+        fos.close();
+
+        StringTable loaded = new StringTable(file);
+        assertTrue(loaded.load());
+        assertEquals(3, loaded.size());
+        assertEquals(complete, file.length());
+        loaded.addAll(Arrays.asList(lecture("Physics", "B202")));
+        StringTable reloaded = new StringTable(file);
+        assertTrue(reloaded.load());
+        assertEquals("Physics", reloaded.get(3));
+    }
+
+    @Test
+    public void tableWithoutChecksumsIsMigrated() throws Exception {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeUTF("Math");
+        out.writeUTF("Prof. X");
+        out.writeUTF("A101");
+        out.close();
+
+        StringTable loaded = new StringTable(file);
+        assertTrue(loaded.load());
+        assertEquals(3, loaded.size());
+        loaded.addAll(Arrays.asList(lecture("Physics", "B202")));
+        StringTable reloaded = new StringTable(file);
+        assertTrue(reloaded.load());
+        assertEquals(5, reloaded.size());
+        assertEquals(2, reloaded.indexOf("A101"));
+    }
+
+    private static BackportAppointment lecture(String title, String room) {
+        return new BackportAppointment("08:00-10:00", new GregorianCalendar(2018, 0, 8), title, "Prof. X", room);
+    }
+}
@@ -0,0 +1,49 @@
+package dhbw.timetable.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SyncCoordinatorTest {
+
+    @Test
+    public void requestsJoinTheSyncInFlight() {
+        SyncCoordinator syncs = new SyncCoordinator();
+        final List<SyncCoordinator.Flight> started = new ArrayList<>();
+        final int[] updates = new int[1];
+        final SyncCoordinator.Flight flight = syncs.request(() -> updates[0]++, null, started::add);
+        assertSame(flight, syncs.request(() -> updates[0]++, null, started::add));
+        assertEquals(1, started.size());
+
+        syncs.succeed(flight);
+        assertTrue(flight.isDone());
+        assertTrue(flight.isSuccess());
+        assertEquals(2, updates[0]);
+        assertNotSame(flight, syncs.request(null, null, started::add));
+    }
+
+    @Test
+    public void aStarterThatThrowsFailsTheFlight() {
+        SyncCoordinator syncs = new SyncCoordinator();
+        final List<String> errors = new ArrayList<>();
+        final SyncCoordinator.Flight flight = syncs.request(null, errors::add, f -> {
+            throw new IllegalStateException("No executor");
+        });
+        assertTrue(flight.isDone());
+        assertFalse(flight.isSuccess());
+        assertEquals(1, errors.size());
+
+        // The next request starts a sync of its own
+        final List<SyncCoordinator.Flight> started = new ArrayList<>();
+        final SyncCoordinator.Flight next = syncs.request(null, null, started::add);
+        assertNotSame(flight, next);
+        assertEquals(1, started.size());
+    }
+}
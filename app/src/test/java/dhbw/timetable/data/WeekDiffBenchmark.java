@@ -0,0 +1,145 @@
+package dhbw.timetable.data;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dhbw.timetable.Benchmark;
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Changes found by {@link WeekDiff} on a semester with a few edits. In the benchmark
+ * category also the time taken on it, on an unchanged semester and on a semester with
+ * four times as many lectures and every week edited.
+ */
+public class WeekDiffBenchmark {
+
+    private static final int WEEKS = 26;
+
+    @Test
+    public void sparseEditsOfASemester() {
+        final Map<TimelessDate, ArrayList<BackportAppointment>> old = Semester.weeks(WEEKS, 5);
+        final List<WeekDiff.Change> changes = WeekDiff.compare(old, sparselyEdited());
+        for (WeekDiff.Change c : changes) System.out.println(c);
+        assertEquals(1, count(changes, WeekDiff.RETIMED));
+        assertEquals(1, count(changes, WeekDiff.ROOM_CHANGED));
+        assertEquals(2, count(changes, WeekDiff.MOVED));
+        assertEquals(1, count(changes, WeekDiff.REMOVED));
+        assertEquals(1, count(changes, WeekDiff.ADDED));
+        assertEquals(0, WeekDiff.compare(old, Semester.weeks(WEEKS, 5)).size());
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void timeOfSparseEdits() {
+        final Map<TimelessDate, ArrayList<BackportAppointment>> old = Semester.weeks(WEEKS, 5);
+        final Map<TimelessDate, ArrayList<BackportAppointment>> now = sparselyEdited();
+        final int edits = WeekDiff.compare(old, now).size();
+        final long editedNanos = Semester.medianNanos(1001, () -> WeekDiff.compare(old, now));
+        final long unchangedNanos = Semester.medianNanos(1001, () -> WeekDiff.compare(old, old));
+        System.out.println(String.format("%d weeks x 20: %d edits in %d us, unchanged in %d us",
+                WEEKS, edits, editedNanos / 1000, unchangedNanos / 1000));
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void timeGrowsLinearlyWithTheLectures() {
+        final Map<TimelessDate, ArrayList<BackportAppointment>> small = Semester.weeks(WEEKS, 5);
+        final Map<TimelessDate, ArrayList<BackportAppointment>> smallEdited = editEveryWeek(small);
+        final Map<TimelessDate, ArrayList<BackportAppointment>> large = quadruple(small);
+        final Map<TimelessDate, ArrayList<BackportAppointment>> largeEdited = editEveryWeek(large);
+        assertEquals(WEEKS, WeekDiff.compare(small, smallEdited).size());
+        assertEquals(WEEKS, WeekDiff.compare(large, largeEdited).size());
+
+        final long smallNanos = Semester.medianNanos(501, () -> WeekDiff.compare(small, smallEdited));
+        final long largeNanos = Semester.medianNanos(501, () -> WeekDiff.compare(large, largeEdited));
+        System.out.println(String.format("every week edited: 20 per week in %d us, 80 per week in %d us",
+                smallNanos / 1000, largeNanos / 1000));
+        // Linear would be 4x, a quadratic alignment 16x
+        assertTrue(largeNanos < smallNanos * 10);
+    }
+
+    /**
+     * @return the semester with one lecture retimed, one in another room, two
+     * moved, one removed and one added
+     */
+    private static Map<TimelessDate, ArrayList<BackportAppointment>> sparselyEdited() {
+        final Map<TimelessDate, ArrayList<BackportAppointment>> now = Semester.weeks(WEEKS, 5);
+        final int m = Semester.FIRST_MONDAY;
+        ArrayList<BackportAppointment> week;
+        BackportAppointment a;
+
+        week = week(now, 2);
+        a = week.get(0);
+        week.set(0, at(m + 14, "07:00-08:00", a, a.getResources()));
+        a = week.get(5);
+        week.set(5, at(m + 15, "10:15-11:45", a, "Raum 9.999"));
+        week = week(now, 5);
+        a = week.get(3);
+        week.set(3, at(m + 39, "16:00-17:00", a, a.getResources()));
+        week(now, 9).remove(7);
+        a = week(now, 6).remove(2);
+        week(now, 7).add(at(m + 51, "18:00-19:00", a, a.getResources()));
+        week(now, 9).add(new BackportAppointment("19:00-20:00", Semester.date(m + 67), "Sondervorlesung", "Gast", "Aula"));
+        return now;
+    }
+
+    private static ArrayList<BackportAppointment> week(Map<TimelessDate, ArrayList<BackportAppointment>> weeks, int w) {
+        return weeks.get(Semester.date(Semester.FIRST_MONDAY + 7 * w));
+    }
+
+    private static BackportAppointment at(int day, String time, BackportAppointment a, String room) {
+        return new BackportAppointment(time, Semester.date(day), a.getTitle(), a.getPersons(), room);
+    }
+
+    /**
+     * @return the weeks with four lectures in parallel to every one, each of another course
+     */
+    private static Map<TimelessDate, ArrayList<BackportAppointment>> quadruple(Map<TimelessDate, ArrayList<BackportAppointment>> weeks) {
+        Map<TimelessDate, ArrayList<BackportAppointment>> large = new LinkedHashMap<>();
+        for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : weeks.entrySet()) {
+            ArrayList<BackportAppointment> lectures = new ArrayList<>();
+            for (BackportAppointment a : week.getValue()) {
+                for (int group = 0; group < 4; group++) {
+                    lectures.add(new BackportAppointment(
+                            SnapshotFormat.timeRange(EpochDays.minuteOfDay(a.getStartDate()), EpochDays.minuteOfDay(a.getEndDate())),
+                            Semester.date(EpochDays.of(a.getStartDate())),
+                            a.getTitle() + " " + group, a.getPersons(), a.getResources()));
+                }
+            }
+            large.put(week.getKey(), lectures);
+        }
+        return large;
+    }
+
+    /**
+     * @return a copy of the weeks with the room of the fourth lecture of every week changed
+     */
+    private static Map<TimelessDate, ArrayList<BackportAppointment>> editEveryWeek(Map<TimelessDate, ArrayList<BackportAppointment>> weeks) {
+        Map<TimelessDate, ArrayList<BackportAppointment>> edited = new LinkedHashMap<>();
+        for (Map.Entry<TimelessDate, ArrayList<BackportAppointment>> week : weeks.entrySet()) {
+            ArrayList<BackportAppointment> lectures = new ArrayList<>(week.getValue());
+            final BackportAppointment a = lectures.get(3);
+            lectures.set(3, at(EpochDays.of(a.getStartDate()), SnapshotFormat.timeRange(
+                    EpochDays.minuteOfDay(a.getStartDate()), EpochDays.minuteOfDay(a.getEndDate())), a, "Raum X"));
+            edited.put(week.getKey(), lectures);
+        }
+        return edited;
+    }
+
+    private static int count(List<WeekDiff.Change> changes, int type) {
+        int count = 0;
+        for (WeekDiff.Change c : changes) {
+            if (c.getType() == type) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,188 @@
+package dhbw.timetable.data;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dhbw.timetable.Benchmark;
+import dhbw.timetable.rapla.data.event.BackportAppointment;
+import dhbw.timetable.rapla.data.time.TimelessDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Requests made by {@link WeekFetcher} for a semester at different parallelism. In the
+ * benchmark category also the time taken to download it from a local stand-in for the
+ * rapla server, which answers a range after 150 ms plus 20 ms per week.
+ */
+public class WeekFetcherBenchmark {
+
+    private static final int WEEKS = 26;
+    private static final int LATENCY_MILLIS = 150;
+    private static final int WEEK_MILLIS = 20;
+
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), WEEKS);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/range", exchange -> {
+            final String[] range = exchange.getRequestURI().getQuery().split("-");
+            final int weeks = (Integer.parseInt(range[1]) - Integer.parseInt(range[0])) / 7 + 1;
+            try {
+                Thread.sleep(LATENCY_MILLIS + WEEK_MILLIS * weeks);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            final byte[] body = "08:15-09:45;Mathematik".getBytes("UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void oneRequestPerThreadInOrderOfTheWeeks() throws Exception {
+        final TreeSet<Integer> mondays = semester();
+        for (int parallelism : new int[]{1, 2, 4, 8}) {
+            final AtomicInteger requests = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            try {
+                final Map<TimelessDate, ArrayList<BackportAppointment>> weeks = new WeekFetcher((from, to) -> {
+                    requests.incrementAndGet();
+                    return lectures(EpochDays.of(from), EpochDays.of(to), "Mathematik");
+                }, executor, parallelism).fetch(mondays);
+
+                assertEquals(parallelism, requests.get());
+                List<Integer> order = new ArrayList<>();
+                for (TimelessDate week : weeks.keySet()) order.add(EpochDays.of(week));
+                assertEquals(new ArrayList<>(mondays), order);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void oneThreadFetchesTheGapsInOneRange() throws Exception {
+        final TreeSet<Integer> mondays = new TreeSet<>();
+        mondays.add(Semester.FIRST_MONDAY);
+        mondays.add(Semester.FIRST_MONDAY + 7 * 5);
+        mondays.add(Semester.FIRST_MONDAY + 7 * 9);
+        final AtomicInteger requests = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            final Map<TimelessDate, ArrayList<BackportAppointment>> weeks = new WeekFetcher((from, to) -> {
+                requests.incrementAndGet();
+                return lectures(EpochDays.of(from), EpochDays.of(to), "Mathematik");
+            }, executor, 1).fetch(mondays);
+
+            assertEquals(1, requests.get());
+            assertEquals(10, weeks.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void rangesOverlapUpToTheParallelism() throws Exception {
+        final TreeSet<Integer> mondays = semester();
+        final int port = server.getAddress().getPort();
+        final WeekFetcher.Source source = (from, to) -> {
+            final String[] lecture = get(new URL("http://127.0.0.1:" + port + "/range?"
+                    + EpochDays.of(from) + "-" + EpochDays.of(to))).split(";");
+            return lectures(EpochDays.of(from), EpochDays.of(to), lecture[1]);
+        };
+        long sequential = 0;
+        for (int parallelism : new int[]{1, 2, 4, 8}) {
+            ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            try {
+                final long start = System.nanoTime();
+                final Map<TimelessDate, ArrayList<BackportAppointment>> weeks = new WeekFetcher(source, executor, parallelism).fetch(mondays);
+                final long millis = (System.nanoTime() - start) / 1000000;
+                assertEquals(WEEKS, weeks.size());
+                System.out.println(String.format("parallelism %d: %d weeks in %d ms", parallelism, weeks.size(), millis));
+
+                if (parallelism == 1) sequential = millis;
+                else assertTrue(millis < sequential);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void firstFailureFailsTheFetch() throws Exception {
+        final TreeSet<Integer> mondays = semester();
+        final int broken = mondays.first() + 7 * 21;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            new WeekFetcher((from, to) -> {
+                if (EpochDays.of(from) <= broken && broken <= EpochDays.of(to)) throw new IOException("Server down");
+                return lectures(EpochDays.of(from), EpochDays.of(to), "Mathematik");
+            }, executor, 4).fetch(mondays);
+            fail("Fetch did not fail");
+        } catch (IOException e) {
+            assertEquals("Server down", e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Map<TimelessDate, ArrayList<BackportAppointment>> lectures(int from, int to, String course) {
+        Map<TimelessDate, ArrayList<BackportAppointment>> weeks = new HashMap<>();
+        for (int monday = from; monday <= to; monday += 7) {
+            ArrayList<BackportAppointment> week = new ArrayList<>();
+            week.add(new BackportAppointment("08:15-09:45", Semester.date(monday), course, "Prof. Dr. Lecturer", "Raum 1.101"));
+            weeks.put(WeekFetcher.weekOf(monday), week);
+        }
+        return weeks;
+    }
+
+    private static TreeSet<Integer> semester() {
+        TreeSet<Integer> mondays = new TreeSet<>();
+        for (int i = 0; i < WEEKS; i++) mondays.add(Semester.FIRST_MONDAY + 7 * i);
+        return mondays;
+    }
+
+    private static String get(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+            return out.toString("UTF-8");
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package dhbw.timetable.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SyncPolicyTest {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    private static final class FakeClock implements Clock {
+        long now = 1000 * HOUR;
+
+        @Override
+        public long now() {
+            return now;
+        }
+    }
+
+    @Test
+    public void intervalsAreClampedToTheShortestJobPeriod() {
+        assertEquals(SyncPolicy.MIN_INTERVAL, SyncPolicy.intervalOf("0.166666"));
+        assertEquals(SyncPolicy.MIN_INTERVAL, SyncPolicy.intervalOf("2.5"));
+        assertEquals(45 * MINUTE, SyncPolicy.intervalOf("7.5"));
+        assertEquals(24 * HOUR, SyncPolicy.intervalOf("240"));
+        assertEquals(-1, SyncPolicy.intervalOf("-1"));
+        assertEquals(-1, SyncPolicy.intervalOf("never"));
+    }
+
+    @Test
+    public void dueOneIntervalAfterTheLastSuccessMinusTheFlex() {
+        final FakeClock clock = new FakeClock();
+        final long interval = 2 * HOUR;
+        SyncPolicy policy = new SyncPolicy(clock, interval, 0, 0, 0);
+        assertTrue(policy.isDue());
+        assertEquals(clock.now + interval, policy.onSuccess());
+        assertFalse(policy.isDue());
+
+        clock.now += interval - SyncPolicy.flexOf(interval) - 1;
+        assertFalse(policy.isDue());
+        clock.now++;
+        assertTrue(policy.isDue());
+    }
+
+    @Test
+    public void clockSetBackCountsAsDue() {
+        final FakeClock clock = new FakeClock();
+        SyncPolicy policy = new SyncPolicy(clock, HOUR, 0, 0, 0);
+        policy.onSuccess();
+        clock.now -= MINUTE;
+        assertTrue(policy.isDue());
+    }
+
+    @Test
+    public void manualSyncIsNeverDue() {
+        final FakeClock clock = new FakeClock();
+        SyncPolicy policy = new SyncPolicy(clock, SyncPolicy.intervalOf("-1"), 0, 0, 0);
+        assertFalse(policy.isDue());
+        policy.onFailure();
+        assertFalse(policy.isDue());
+    }
+
+    @Test
+    public void failuresBackOffExponentiallyUpToTheMaximum() {
+        final FakeClock clock = new FakeClock();
+        SyncPolicy policy = new SyncPolicy(clock, HOUR, 0, 0, 0);
+        long delay = SyncPolicy.INITIAL_BACKOFF;
+        for (int failure = 1; failure <= 30; failure++) {
+            clock.now += MINUTE;
+            assertEquals(clock.now + delay, policy.onFailure());
+            assertEquals(failure, policy.getFailures());
+            assertTrue(policy.isDue());
+            delay = Math.min(SyncPolicy.MAX_BACKOFF, delay * 2);
+        }
+        assertEquals(SyncPolicy.MAX_BACKOFF, SyncPolicy.backoff(Integer.MAX_VALUE));
+        assertEquals(0, SyncPolicy.backoff(0));
+
+        clock.now += MINUTE;
+        assertEquals(clock.now + HOUR, policy.onSuccess());
+        assertEquals(0, policy.getFailures());
+        assertFalse(policy.isDue());
+    }
+}